@@ -0,0 +1,52 @@
+package org.taller01.accountms.bench;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.taller01.accountms.domain.Account;
+import org.taller01.accountms.domain.AccountType;
+import org.taller01.accountms.dto.response.AccountResponse;
+
+/** Mapeo Account → AccountResponse y su serialización JSON con la configuración de Spring. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AccountResponseBenchmark {
+
+  private Account account;
+  private AccountResponse response;
+  private ObjectMapper mapper;
+
+  @Setup
+  public void setUp() {
+    account = Account.builder().id("66ea0000000000000000baaa").clientId("66ea0000000000000000a111")
+        .accountNumber("SV-0000000001").balance(new BigDecimal("1234.56")).active(true)
+        .type(AccountType.SAVINGS).build();
+    response = AccountResponse.from(account);
+    mapper = Jackson2ObjectMapperBuilder.json().build();
+  }
+
+  @Benchmark
+  public AccountResponse from() {
+    return AccountResponse.from(account);
+  }
+
+  @Benchmark
+  public byte[] serializeJson() throws Exception {
+    return mapper.writeValueAsBytes(response);
+  }
+}
@@ -0,0 +1,114 @@
+package org.taller01.accountms.bench;
+
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.taller01.accountms.client.ClientLookupBatcher;
+import org.taller01.accountms.client.ClientMsClient;
+import org.taller01.accountms.client.ClientValidationCache;
+import org.taller01.accountms.domain.Account;
+import org.taller01.accountms.domain.AccountType;
+import org.taller01.accountms.dto.request.CreateAccountRequest;
+import org.taller01.accountms.service.AccountCache;
+import org.taller01.accountms.service.AccountNumberAllocator;
+import org.taller01.accountms.service.AccountService;
+import org.taller01.accountms.service.BalanceMigration;
+import org.taller01.accountms.service.BalanceSlotService;
+import org.taller01.accountms.service.LedgerService;
+import org.taller01.accountms.service.MovementCoalescer;
+import reactor.core.publisher.Mono;
+
+/**
+ * Caminos calientes de AccountService contra {@link InMemoryStore}. Ejecutar con
+ * {@code mvn -Pbenchmarks test-compile exec:exec}; el perfilador {@code gc} reporta la asignación
+ * por operación ({@code gc.alloc.rate.norm}).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AccountServiceBenchmark {
+
+  private static final BigDecimal AMOUNT = new BigDecimal("1.00");
+
+  private AccountService service;
+  private AccountCache cache;
+  private String accountId;
+  private CreateAccountRequest createRequest;
+
+  @Setup
+  public void setUp() {
+    InMemoryStore store = new InMemoryStore();
+    var registry = new SimpleMeterRegistry();
+    var template = store.template();
+    // ClientMS simulado: siempre 200 (tras la primera llamada responde la caché)
+    var builder = WebClient.builder()
+        .exchangeFunction(req -> Mono.just(ClientResponse.create(HttpStatus.OK).build()));
+    var client = new ClientMsClient(builder, "http://clientms", Duration.ofSeconds(1),
+        Duration.ofSeconds(2), CircuitBreakerRegistry.ofDefaults(), BulkheadRegistry.ofDefaults(),
+        registry);
+    // Sin agrupación: el benchmark mide el servicio, no la ventana del batcher
+    var batcher = new ClientLookupBatcher(client, registry, false, Duration.ZERO, 1, Duration.ZERO);
+    var clients = new ClientValidationCache(batcher, registry, 10_000, Duration.ofMinutes(5),
+        Duration.ofSeconds(10));
+
+    cache = new AccountCache(registry, 10_000, Duration.ofMinutes(5));
+    service = new AccountService(store.repository(), template, clients,
+        new AccountNumberAllocator(template, 1_000, registry),
+        cache,
+        new MovementCoalescer(template, registry, false, Duration.ZERO, 1),
+        new LedgerService(template, null, false, 1000),
+        new BalanceSlotService(template, null, Duration.ofSeconds(10)), null,
+        new BalanceMigration(template, registry, false, 500), registry, 500);
+
+    // Saldo alto para que withdraw nunca se quede sin fondos durante la medición
+    accountId = store.seed(new BigDecimal("1000000000000.00")).getId();
+    createRequest = new CreateAccountRequest("C1", BigDecimal.TEN, AccountType.SAVINGS);
+  }
+
+  @Benchmark
+  public Account deposit() {
+    return service.deposit(accountId, AMOUNT).block();
+  }
+
+  @Benchmark
+  public Account withdraw() {
+    return service.withdraw(accountId, AMOUNT).block();
+  }
+
+  /** Tras la primera llamada siempre acierta en la caché. */
+  @Benchmark
+  public Account getById() {
+    return service.getById(accountId).block();
+  }
+
+  /** Fallo de caché en cada llamada: lectura del repositorio y recarga de la entrada. */
+  @Benchmark
+  public Account getByIdCacheMiss() {
+    cache.invalidate(accountId);
+    return service.getById(accountId).block();
+  }
+
+  @Benchmark
+  public Account create() {
+    return service.create(createRequest).block();
+  }
+}
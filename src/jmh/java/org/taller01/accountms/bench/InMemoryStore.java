@@ -0,0 +1,143 @@
+package org.taller01.accountms.bench;
+
+import com.mongodb.ClientSessionOptions;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.reactivestreams.client.ClientSession;
+import com.mongodb.reactivestreams.client.MongoDatabase;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.bson.Document;
+import org.bson.codecs.configuration.CodecRegistry;
+import org.bson.types.Decimal128;
+import org.bson.types.ObjectId;
+import org.springframework.dao.support.PersistenceExceptionTranslator;
+import org.springframework.data.mongodb.ReactiveMongoDatabaseFactory;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoExceptionTranslator;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.UpdateDefinition;
+import org.taller01.accountms.domain.Account;
+import org.taller01.accountms.repository.AccountRepository;
+import reactor.core.publisher.Mono;
+
+/**
+ * Sustituto en memoria de MongoDB para los benchmarks: mide el coste de los pipelines reactivos de
+ * AccountService sin red ni driver. Solo implementa las operaciones que usan los caminos medidos.
+ */
+final class InMemoryStore {
+
+  final Map<String, Account> accounts = new ConcurrentHashMap<>();
+  private final Map<String, AtomicLong> counters = new ConcurrentHashMap<>();
+
+  Account seed(BigDecimal balance) {
+    Account acc = Account.builder().id(new ObjectId().toHexString()).clientId("C1")
+        .accountNumber("SV-" + accounts.size()).balance(balance).active(true).build();
+    accounts.put(acc.getId(), acc);
+    return acc;
+  }
+
+  /** Proxy de AccountRepository: findById, save, existsById y delete. */
+  AccountRepository repository() {
+    return (AccountRepository) Proxy.newProxyInstance(AccountRepository.class.getClassLoader(),
+        new Class<?>[] {AccountRepository.class}, (proxy, method, args) -> switch (method
+            .getName()) {
+          case "findById" -> Mono.justOrEmpty(accounts.get((String) args[0]));
+          case "existsById" -> Mono.just(accounts.containsKey((String) args[0]));
+          case "save" -> {
+            Account acc = (Account) args[0];
+            if (acc.getId() == null)
+              acc.setId(new ObjectId().toHexString());
+            accounts.put(acc.getId(), acc);
+            yield Mono.just(acc);
+          }
+          case "delete" -> {
+            accounts.remove(((Account) args[0]).getId());
+            yield Mono.empty();
+          }
+          case "hashCode" -> System.identityHashCode(proxy);
+          case "equals" -> proxy == args[0];
+          case "toString" -> "InMemoryAccountRepository";
+          default -> throw new UnsupportedOperationException(method.getName());
+        });
+  }
+
+  /** Template que interpreta los findAndModify de saldo ($inc con guarda $gte) y de counters. */
+  ReactiveMongoTemplate template() {
+    return new ReactiveMongoTemplate(new NoNetworkFactory()) {
+
+      @Override
+      @SuppressWarnings("unchecked")
+      public <T> Mono<T> findAndModify(Query query, UpdateDefinition update,
+          FindAndModifyOptions options, Class<T> entityClass) {
+        Document q = query.getQueryObject();
+        BigDecimal delta = ((Decimal128) update.getUpdateObject().get("$inc", Document.class)
+            .get("balance")).bigDecimalValue();
+        Document guard = q.get("balance", Document.class);
+        BigDecimal min = guard == null ? null : ((Decimal128) guard.get("$gte")).bigDecimalValue();
+        Account[] result = new Account[1];
+        accounts.computeIfPresent((String) q.get("_id"), (id, acc) -> {
+          if (min != null && acc.getBalance().compareTo(min) < 0)
+            return acc;
+          Account updated = acc.toBuilder().balance(acc.getBalance().add(delta)).build();
+          result[0] = updated;
+          return updated;
+        });
+        return Mono.justOrEmpty((T) result[0]);
+      }
+
+      @Override
+      @SuppressWarnings("unchecked")
+      public <T> Mono<T> findAndModify(Query query, UpdateDefinition update,
+          FindAndModifyOptions options, Class<T> entityClass, String collectionName) {
+        String key = (String) query.getQueryObject().get("_id");
+        long inc = ((Number) update.getUpdateObject().get("$inc", Document.class).get("seq"))
+            .longValue();
+        long seq = counters.computeIfAbsent(key, k -> new AtomicLong()).addAndGet(inc);
+        return Mono.just((T) new Document("_id", key).append("seq", seq));
+      }
+    };
+  }
+
+  /** Fábrica sin conexión: basta para construir el template; cualquier acceso real falla. */
+  private static final class NoNetworkFactory implements ReactiveMongoDatabaseFactory {
+
+    @Override
+    public Mono<MongoDatabase> getMongoDatabase() {
+      return Mono.error(new UnsupportedOperationException("sin MongoDB en benchmarks"));
+    }
+
+    @Override
+    public Mono<MongoDatabase> getMongoDatabase(String dbName) {
+      return getMongoDatabase();
+    }
+
+    @Override
+    public PersistenceExceptionTranslator getExceptionTranslator() {
+      return new MongoExceptionTranslator();
+    }
+
+    @Override
+    public CodecRegistry getCodecRegistry() {
+      return MongoClientSettings.getDefaultCodecRegistry();
+    }
+
+    @Override
+    public Mono<ClientSession> getSession(ClientSessionOptions options) {
+      return Mono.error(new UnsupportedOperationException());
+    }
+
+    @Override
+    public ReactiveMongoDatabaseFactory withSession(ClientSession session) {
+      return this;
+    }
+
+    @Override
+    public boolean isTransactionActive() {
+      return false;
+    }
+  }
+}
@@ -0,0 +1,93 @@
+package org.taller01.accountms.bench;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.taller01.accountms.domain.AccountType;
+import org.taller01.accountms.domain.MovementType;
+import org.taller01.accountms.dto.request.MovementCommand;
+import org.taller01.accountms.dto.response.AccountResponse;
+import org.taller01.accountms.dto.response.MovementResult;
+import org.taller01.accountms.dto.response.MovementResult.Status;
+
+/**
+ * JSON frente a Smile ({@code application/x-jackson-smile}) para el tráfico interno: respuesta de
+ * depósito/retiro y lote de movimientos (petición y respuesta). El tamaño de cada payload se
+ * imprime al preparar el estado; el costo de CPU es el throughput (y B/op con {@code -prof gc}).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WireFormatBenchmark {
+
+  private static final TypeReference<List<MovementCommand>> COMMANDS = new TypeReference<>() {};
+
+  @Param({"json", "smile"})
+  public String format;
+
+  @Param({"100"})
+  public int batchSize;
+
+  private ObjectMapper mapper;
+  private AccountResponse response;
+  private List<MovementResult> results;
+  private byte[] commandsPayload;
+
+  @Setup
+  public void setUp() throws Exception {
+    var builder = Jackson2ObjectMapperBuilder.json();
+    mapper = "smile".equals(format) ? builder.factory(new SmileFactory()).build() : builder.build();
+
+    response = new AccountResponse("66ea0000000000000000baaa", "SV-0000000001",
+        new BigDecimal("1234.56"), AccountType.SAVINGS, "66ea0000000000000000a111", true);
+    List<MovementCommand> commands = new ArrayList<>(batchSize);
+    results = new ArrayList<>(batchSize);
+    for (int i = 0; i < batchSize; i++) {
+      String id = String.format("66ea00000000000000%06d", i);
+      MovementType type = i % 3 == 0 ? MovementType.WITHDRAW : MovementType.DEPOSIT;
+      BigDecimal amount = new BigDecimal(25 + i % 50 + ".75");
+      commands.add(new MovementCommand(id, type, amount));
+      results.add(new MovementResult(i, id, type, amount, Status.APPLIED,
+          new BigDecimal(10_000 + i + ".50")));
+    }
+    commandsPayload = mapper.writeValueAsBytes(commands);
+
+    System.out.printf("%n[%s] AccountResponse=%d B, batch %d: request=%d B, response=%d B%n",
+        format, mapper.writeValueAsBytes(response).length, batchSize, commandsPayload.length,
+        mapper.writeValueAsBytes(results).length);
+  }
+
+  @Benchmark
+  public byte[] encodeAccountResponse() throws Exception {
+    return mapper.writeValueAsBytes(response);
+  }
+
+  @Benchmark
+  public List<MovementCommand> decodeBatchRequest() throws Exception {
+    return mapper.readValue(commandsPayload, COMMANDS);
+  }
+
+  @Benchmark
+  public byte[] encodeBatchResponse() throws Exception {
+    return mapper.writeValueAsBytes(results);
+  }
+}
@@ -0,0 +1,71 @@
+package org.taller01.accountms.loadtest;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import org.HdrHistogram.Histogram;
+
+/**
+ * Percentiles de referencia en microsegundos, con claves {@code <operación>.p50|p99|p99_9}
+ * ({@code all.*} agrupa toda la mezcla). Una corrida regresa cuando algún percentil supera la
+ * referencia en más de la tolerancia relativa más un margen absoluto.
+ */
+final class LatencyBaseline {
+
+  static final Map<String, Double> PERCENTILES = Map.of("p50", 50.0, "p99", 99.0, "p99_9", 99.9);
+
+  /** Con menos muestras el p99.9 es solo el máximo observado y no sirve como referencia. */
+  static final long MIN_SAMPLES_P99_9 = 1000;
+
+  private LatencyBaseline() {}
+
+  static Map<String, Long> summarize(Map<String, Histogram> histograms) {
+    Map<String, Long> summary = new TreeMap<>();
+    histograms.forEach((name, h) -> {
+      if (h.getTotalCount() > 0)
+        PERCENTILES.forEach((key, p) -> {
+          if (p < 99.9 || h.getTotalCount() >= MIN_SAMPLES_P99_9)
+            summary.put(name + "." + key, h.getValueAtPercentile(p));
+        });
+    });
+    return summary;
+  }
+
+  static Map<String, Long> load(Path file) throws IOException {
+    Properties props = new Properties();
+    try (Reader in = Files.newBufferedReader(file)) {
+      props.load(in);
+    }
+    Map<String, Long> baseline = new TreeMap<>();
+    props.stringPropertyNames().forEach(k -> baseline.put(k, Long.parseLong(props.getProperty(k))));
+    return baseline;
+  }
+
+  /** Escribe las claves ordenadas para que el diff de la línea base sea legible. */
+  static void store(Path file, Map<String, Long> summary, String comment) throws IOException {
+    List<String> lines = new ArrayList<>();
+    lines.add("# " + comment);
+    new TreeMap<>(summary).forEach((k, v) -> lines.add(k + "=" + v));
+    Files.createDirectories(file.toAbsolutePath().getParent());
+    Files.write(file, lines);
+  }
+
+  /** Devuelve una línea por percentil que excede {@code baseline * (1 + tolerance) + slack}. */
+  static List<String> regressions(Map<String, Long> summary, Map<String, Long> baseline,
+      double tolerance, long slackMicros) {
+    List<String> out = new ArrayList<>();
+    baseline.forEach((key, reference) -> {
+      Long measured = summary.get(key);
+      if (measured != null && measured > reference * (1 + tolerance) + slackMicros)
+        out.add(String.format("%s: %d us > %d us (+%.0f%%)", key, measured, reference,
+            100.0 * (measured - reference) / reference));
+    });
+    return out;
+  }
+}
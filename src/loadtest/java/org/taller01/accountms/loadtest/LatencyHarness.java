@@ -0,0 +1,240 @@
+package org.taller01.accountms.loadtest;
+
+import de.bwaldvogel.mongo.MongoServer;
+import de.bwaldvogel.mongo.backend.memory.MemoryBackend;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.IntStream;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.bson.types.ObjectId;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.reactive.context.ReactiveWebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.taller01.accountms.AccountMsApplication;
+import org.taller01.accountms.loadtest.Workload.Operation;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.resources.ConnectionProvider;
+
+/**
+ * Prueba de carga de extremo a extremo: levanta la aplicación completa contra un MongoDB en memoria
+ * (mongo-java-server, protocolo wire real) y un ClientMS simulado, y dispara la mezcla de
+ * {@link Workload} con un modelo abierto: las llegadas siguen un calendario fijo y la latencia se
+ * mide desde el instante planificado, de modo que las esperas del cliente no ocultan colas
+ * (coordinated omission).
+ *
+ * <p>
+ * Parámetros (propiedades de sistema): {@code loadtest.rate} (req/s), {@code loadtest.duration} y
+ * {@code loadtest.warmup} (segundos), {@code loadtest.accounts}, {@code loadtest.clients},
+ * {@code loadtest.mix}, {@code loadtest.host}, {@code loadtest.baseline},
+ * {@code loadtest.tolerance}, {@code loadtest.slack-ms}, {@code loadtest.max-error-rate} y
+ * {@code loadtest.update-baseline}. Termina con código 1 si la corrida regresa respecto de la línea
+ * base.
+ *
+ * <p>
+ * La línea base es propia de cada máquina y ritmo: un archivo por host y {@code rate} en
+ * {@code .loadtest/}, fuera del control de versiones. Si no existe para esta máquina la puerta no
+ * se aplica; {@code loadtest.update-baseline} la genera.
+ */
+public final class LatencyHarness {
+
+  private static final long HIGHEST_MICROS = TimeUnit.MINUTES.toMicros(1);
+
+  private final int rate = Integer.getInteger("loadtest.rate", 50);
+  private final Duration duration = Duration.ofSeconds(Integer.getInteger("loadtest.duration", 30));
+  private final Duration warmup = Duration.ofSeconds(Integer.getInteger("loadtest.warmup", 10));
+  private final int accounts = Integer.getInteger("loadtest.accounts", 200);
+  private final int clients = Integer.getInteger("loadtest.clients", 20);
+  private final String mix = System.getProperty("loadtest.mix", Workload.DEFAULT_MIX);
+  private final String host = hostName();
+  private final Path baselineFile = Path.of(System.getProperty("loadtest.baseline",
+      ".loadtest/latency-baseline-" + host + "-" + rate + ".properties"));
+  private final double tolerance =
+      Double.parseDouble(System.getProperty("loadtest.tolerance", "0.25"));
+  private final long slackMicros =
+      TimeUnit.MILLISECONDS.toMicros(Long.getLong("loadtest.slack-ms", 5));
+  private final double maxErrorRate =
+      Double.parseDouble(System.getProperty("loadtest.max-error-rate", "0.01"));
+  private final boolean updateBaseline = Boolean.getBoolean("loadtest.update-baseline");
+  private final Path reportDir =
+      Path.of(System.getProperty("loadtest.report-dir", "target/loadtest"));
+
+  private final Map<Operation, Histogram> histograms = new EnumMap<>(Operation.class);
+  private final Histogram all = new ConcurrentHistogram(HIGHEST_MICROS, 3);
+  private final Map<Operation, AtomicLong> errors = new EnumMap<>(Operation.class);
+  /** Primer error por operación, para diagnosticar corridas fallidas. */
+  private final Map<Operation, String> firstError = new ConcurrentHashMap<>();
+  private final AtomicLong measured = new AtomicLong();
+
+  public static void main(String[] args) throws Exception {
+    System.exit(new LatencyHarness().run());
+  }
+
+  int run() throws Exception {
+    MongoServer mongo = new MongoServer(new MemoryBackend());
+    InetSocketAddress mongoAddress = mongo.bind();
+    DisposableServer clientMs = HttpServer.create().host("localhost").port(0)
+        .route(r -> r.get("/clientes/{id}", (req, res) -> res
+            .header("Content-Type", "application/json").sendString(Mono.just("{}"))))
+        .bindNow();
+    ConfigurableApplicationContext app = new SpringApplicationBuilder(AccountMsApplication.class)
+        .run("--server.port=0",
+            "--spring.data.mongodb.uri=mongodb://localhost:" + mongoAddress.getPort()
+                + "/accountMSdb",
+            "--clientms.base-url=http://localhost:" + clientMs.port(),
+            // El sustituto no implementa explain, índices compuestos ni change streams
+            "--accountms.mongo.indexes.enabled=false", "--accountms.cache.sync.enabled=false",
+            "--spring.main.banner-mode=off",
+            "--logging.level.root=WARN");
+    try {
+      int port = ((ReactiveWebServerApplicationContext) app).getWebServer().getPort();
+      ConnectionProvider pool = ConnectionProvider.builder("loadtest").maxConnections(1000)
+          .pendingAcquireMaxCount(-1).build();
+      WebClient http = WebClient.builder().baseUrl("http://localhost:" + port)
+          .clientConnector(new ReactorClientHttpConnector(HttpClient.create(pool))).build();
+      List<String> clientIds =
+          IntStream.range(0, clients).mapToObj(i -> new ObjectId().toHexString()).toList();
+
+      Workload workload = new Workload(http, clientIds, mix);
+      workload.seed(accounts).block(Duration.ofMinutes(1));
+      for (Operation op : Operation.values()) {
+        histograms.put(op, new ConcurrentHistogram(HIGHEST_MICROS, 3));
+        errors.put(op, new AtomicLong());
+      }
+      drive(workload);
+      pool.disposeLater().block();
+    } finally {
+      app.close();
+      clientMs.disposeNow();
+      mongo.shutdownNow();
+    }
+    return report();
+  }
+
+  /**
+   * Modelo abierto: la petición i se planifica en {@code start + i / rate}, se haya completado o no
+   * la anterior. Solo se registran las planificadas después del calentamiento.
+   */
+  private void drive(Workload workload) throws InterruptedException {
+    long interval = TimeUnit.SECONDS.toNanos(1) / rate;
+    long start = System.nanoTime();
+    long measureFrom = start + warmup.toNanos();
+    long end = measureFrom + duration.toNanos();
+    AtomicLong inFlight = new AtomicLong();
+    for (long i = 0;; i++) {
+      long intended = start + i * interval;
+      if (intended >= end)
+        break;
+      long wait = intended - System.nanoTime();
+      if (wait > 0)
+        LockSupport.parkNanos(wait);
+      Operation op = workload.next();
+      boolean record = intended >= measureFrom;
+      inFlight.incrementAndGet();
+      workload.execute(op).doFinally(s -> inFlight.decrementAndGet())
+          .subscribe(null, e -> {
+            firstError.putIfAbsent(op, e.toString());
+            complete(op, intended, record, true);
+          }, () -> complete(op, intended, record, false));
+    }
+    // Drenar las peticiones pendientes antes de cerrar la aplicación
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+    while (inFlight.get() > 0 && System.nanoTime() < deadline)
+      Thread.sleep(50);
+  }
+
+  private void complete(Operation op, long intended, boolean record, boolean failed) {
+    if (!record)
+      return;
+    long micros = Math.min(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - intended),
+        HIGHEST_MICROS);
+    histograms.get(op).recordValue(micros);
+    all.recordValue(micros);
+    measured.incrementAndGet();
+    if (failed)
+      errors.get(op).incrementAndGet();
+  }
+
+  /** {@code loadtest.host} si se indica (p. ej. un runner de CI); si no, el nombre del equipo. */
+  private static String hostName() {
+    String host = System.getProperty("loadtest.host", "");
+    if (host.isBlank())
+      host = System.getenv().getOrDefault("HOSTNAME", "");
+    if (host.isBlank()) {
+      try {
+        host = InetAddress.getLocalHost().getHostName();
+      } catch (UnknownHostException e) {
+        host = "local";
+      }
+    }
+    return host.replaceAll("[^A-Za-z0-9._-]", "_");
+  }
+
+  private static void row(PrintStream out, String name, Histogram h, long errors) {
+    out.printf("%-10s %8d %8d %10d %10d %10d%n", name, h.getTotalCount(), errors,
+        h.getValueAtPercentile(50), h.getValueAtPercentile(99), h.getValueAtPercentile(99.9));
+  }
+
+  private int report() throws Exception {
+    Map<String, Histogram> byName = new LinkedHashMap<>();
+    histograms.forEach((op, h) -> byName.put(op.key, h));
+    byName.put("all", all);
+    Map<String, Long> summary = LatencyBaseline.summarize(byName);
+
+    PrintStream out = System.out;
+    // Salida en ASCII: la consola de Maven no siempre usa UTF-8
+    out.printf("%nrate=%d req/s, duration=%ss, mix=%s%n", rate, duration.toSeconds(), mix);
+    out.printf("%-10s %8s %8s %10s %10s %10s%n", "op", "n", "errors", "p50 us", "p99 us",
+        "p99.9 us");
+    histograms.forEach((op, h) -> row(out, op.key, h, errors.get(op).get()));
+    long totalErrors = errors.values().stream().mapToLong(AtomicLong::get).sum();
+    row(out, "all", all, totalErrors);
+    firstError.forEach((op, e) -> out.println("  " + op.key + ": " + e));
+
+    Files.createDirectories(reportDir);
+    try (PrintStream hgrm = new PrintStream(reportDir.resolve("all.hgrm").toFile())) {
+      all.outputPercentileDistribution(hgrm, 1000.0);
+    }
+    LatencyBaseline.store(reportDir.resolve("latency-summary.properties"), summary,
+        "Ultima corrida (us)");
+
+    double errorRate = measured.get() == 0 ? 1 : (double) totalErrors / measured.get();
+    if (errorRate > maxErrorRate) {
+      out.printf("FAIL: error rate %.2f%% > %.2f%%%n", errorRate * 100, maxErrorRate * 100);
+      return 1;
+    }
+    if (updateBaseline) {
+      LatencyBaseline.store(baselineFile, summary, "Linea base de latencia (us), rate=" + rate);
+      out.println("Baseline updated: " + baselineFile);
+      return 0;
+    }
+    if (!Files.exists(baselineFile)) {
+      out.println("No baseline for host " + host + " at " + baselineFile
+          + "; gate skipped. Run with -Dloadtest.update-baseline=true to create it");
+      return 0;
+    }
+    List<String> regressions =
+        LatencyBaseline.regressions(summary, LatencyBaseline.load(baselineFile), tolerance,
+            slackMicros);
+    regressions.forEach(r -> out.println("REGRESSION " + r));
+    return regressions.isEmpty() ? 0 : 1;
+  }
+}
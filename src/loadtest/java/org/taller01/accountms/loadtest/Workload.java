@@ -0,0 +1,137 @@
+package org.taller01.accountms.loadtest;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Mezcla de peticiones sobre {@code /cuentas}. Por defecto replica la colección Postman
+ * ({@code postman/accountms-collection.json}): una petición de cada tipo con el mismo peso.
+ */
+final class Workload {
+
+  static final String DEFAULT_MIX = "create=1,list=1,get=1,byClient=1,put=1,patch=1,delete=1";
+
+  enum Operation {
+    CREATE("create"), LIST("list"), GET("get"), BY_CLIENT("byClient"), PUT("put"), PATCH("patch"),
+    DELETE("delete");
+
+    final String key;
+
+    Operation(String key) {
+      this.key = key;
+    }
+
+    static Operation of(String key) {
+      for (Operation op : values())
+        if (op.key.equals(key))
+          return op;
+      throw new IllegalArgumentException("Operación desconocida en loadtest.mix: " + key);
+    }
+  }
+
+  private final WebClient http;
+  private final List<String> clientIds;
+  private final Operation[] wheel;
+  /** Cuentas sembradas: objetivo de lecturas y actualizaciones, nunca se borran. */
+  private final List<String> accounts = new CopyOnWriteArrayList<>();
+  /**
+   * Cuentas sembradas libres para PUT/PATCH con su estado {@code active}. La API responde 409 si
+   * el valor no cambia, así que cada actualización toma una cuenta, la alterna y la devuelve.
+   */
+  private final Queue<Map.Entry<String, Boolean>> idle = new ConcurrentLinkedQueue<>();
+  /** Cuentas creadas durante la corrida: las únicas que consume DELETE. */
+  private final Queue<String> disposable = new ConcurrentLinkedQueue<>();
+
+  Workload(WebClient http, List<String> clientIds, String mix) {
+    this.http = http;
+    this.clientIds = clientIds;
+    this.wheel = parse(mix);
+  }
+
+  /** Expande "op=peso,..." en una rueda donde cada operación aparece tantas veces como su peso. */
+  static Operation[] parse(String mix) {
+    Map<Operation, Integer> weights = new EnumMap<>(Operation.class);
+    for (String entry : mix.split(",")) {
+      String[] kv = entry.trim().split("=");
+      weights.put(Operation.of(kv[0].trim()), Integer.parseInt(kv[1].trim()));
+    }
+    List<Operation> wheel = new ArrayList<>();
+    weights.forEach((op, w) -> {
+      for (int i = 0; i < w; i++)
+        wheel.add(op);
+    });
+    if (wheel.isEmpty())
+      throw new IllegalArgumentException("loadtest.mix no tiene operaciones con peso positivo");
+    return wheel.toArray(Operation[]::new);
+  }
+
+  Mono<Void> seed(int count) {
+    return Flux.range(0, count).flatMap(i -> create(100), 32).doOnNext(id -> {
+      accounts.add(id);
+      idle.add(Map.entry(id, true));
+    }).then();
+  }
+
+  Operation next() {
+    Operation op = wheel[ThreadLocalRandom.current().nextInt(wheel.length)];
+    // Sin cuentas desechables, DELETE se degrada a CREATE para no tocar las sembradas
+    return op == Operation.DELETE && disposable.isEmpty() ? Operation.CREATE : op;
+  }
+
+  Mono<Void> execute(Operation op) {
+    return switch (op) {
+      // Saldo 0: la API solo permite eliminar cuentas sin saldo
+      case CREATE -> create(0).doOnNext(disposable::add).then();
+      case LIST -> exchange(http.get().uri("/cuentas"));
+      case GET -> exchange(http.get().uri("/cuentas/{id}", anyAccount()));
+      case BY_CLIENT -> exchange(http.get().uri("/cuentas/cliente/{clientId}", anyClient()));
+      case PUT -> toggle(http.put());
+      case PATCH -> toggle(http.patch());
+      case DELETE -> {
+        String id = disposable.poll();
+        yield id == null ? create(0).then() : exchange(http.delete().uri("/cuentas/{id}", id));
+      }
+    };
+  }
+
+  private Mono<Void> toggle(WebClient.RequestBodyUriSpec method) {
+    Map.Entry<String, Boolean> account = idle.poll();
+    // Todas las cuentas tienen una actualización en curso: se mide una lectura en su lugar
+    if (account == null)
+      return exchange(http.get().uri("/cuentas/{id}", anyAccount()));
+    boolean next = !account.getValue();
+    return exchange(method.uri("/cuentas/{id}", account.getKey())
+        .contentType(MediaType.APPLICATION_JSON).bodyValue(Map.of("active", next)))
+        .doOnSuccess(v -> idle.add(Map.entry(account.getKey(), next)))
+        .doOnError(e -> idle.add(account));
+  }
+
+  private Mono<String> create(int initialBalance) {
+    Map<String, Object> body = Map.of("clientId", anyClient(), "initialBalance", initialBalance,
+        "accountType", "SAVINGS");
+    return http.post().uri("/cuentas").contentType(MediaType.APPLICATION_JSON).bodyValue(body)
+        .retrieve().bodyToMono(Map.class).map(m -> (String) m.get("id"));
+  }
+
+  private static Mono<Void> exchange(WebClient.RequestHeadersSpec<?> spec) {
+    return spec.retrieve().toBodilessEntity().then();
+  }
+
+  private String anyAccount() {
+    return accounts.get(ThreadLocalRandom.current().nextInt(accounts.size()));
+  }
+
+  private String anyClient() {
+    return clientIds.get(ThreadLocalRandom.current().nextInt(clientIds.size()));
+  }
+}
@@ -0,0 +1,136 @@
+package org.taller01.accountms.client;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.taller01.accountms.client.ClientMsClient.BatchUnsupportedException;
+import org.taller01.accountms.client.ClientMsClient.Validation;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+/**
+ * Agrupa las validaciones de cliente pedidas dentro de una ventana corta (o hasta {@code max-size}
+ * ids distintos) y las resuelve con una sola consulta por lote a ClientMS. Si ClientMS no expone el
+ * lote se vuelve a las llamadas individuales y no se reintenta el lote hasta pasado
+ * {@code unsupported-recheck}.
+ *
+ * <p>
+ * {@code clientms.batch.size} registra cuántos ids distintos lleva cada lote y
+ * {@code clientms.batch.fallbacks} cuántos lotes tuvieron que resolverse id por id.
+ */
+@Component
+public class ClientLookupBatcher {
+
+  private final ClientMsClient client;
+  private final boolean enabled;
+  private final Duration window;
+  private final int maxSize;
+  private final long unsupportedRecheckNanos;
+  private final DistributionSummary batchSizes;
+  private final Counter fallbacks;
+
+  // Lote en curso; se sustituye entero al despacharlo (guardado por this)
+  private Map<String, List<MonoSink<Validation>>> pending = new LinkedHashMap<>();
+  private long generation;
+  // nanoTime a partir del cual se vuelve a probar el lote; 0 mientras se considere soportado
+  private volatile long bulkRetryAt;
+
+  public ClientLookupBatcher(ClientMsClient client, MeterRegistry registry,
+      @Value("${clientms.batch.enabled:true}") boolean enabled,
+      @Value("${clientms.batch.window:2ms}") Duration window,
+      @Value("${clientms.batch.max-size:64}") int maxSize,
+      @Value("${clientms.batch.unsupported-recheck:5m}") Duration unsupportedRecheck) {
+    this.client = client;
+    this.enabled = enabled;
+    this.window = window;
+    this.maxSize = Math.max(1, maxSize);
+    this.unsupportedRecheckNanos = unsupportedRecheck.toNanos();
+    this.batchSizes = DistributionSummary.builder("clientms.batch.size").register(registry);
+    this.fallbacks = registry.counter("clientms.batch.fallbacks");
+  }
+
+  public Mono<Validation> validar(String clientId) {
+    if (!enabled)
+      return client.validar(clientId);
+    return Mono.create(sink -> enqueue(clientId, sink));
+  }
+
+  private void enqueue(String clientId, MonoSink<Validation> sink) {
+    Map<String, List<MonoSink<Validation>>> full = null;
+    long scheduled = -1;
+    synchronized (this) {
+      if (pending.isEmpty())
+        scheduled = generation;
+      pending.computeIfAbsent(clientId, id -> new ArrayList<>(1)).add(sink);
+      if (pending.size() >= maxSize)
+        full = takePending();
+    }
+    if (full != null)
+      dispatch(full);
+    else if (scheduled >= 0) {
+      long gen = scheduled;
+      Mono.delay(window).subscribe(t -> flush(gen));
+    }
+  }
+
+  /** Despacha el lote de la generación {@code gen} si nadie lo ha despachado ya por tamaño. */
+  private void flush(long gen) {
+    Map<String, List<MonoSink<Validation>>> batch;
+    synchronized (this) {
+      if (gen != generation || pending.isEmpty())
+        return;
+      batch = takePending();
+    }
+    dispatch(batch);
+  }
+
+  private Map<String, List<MonoSink<Validation>>> takePending() {
+    Map<String, List<MonoSink<Validation>>> batch = pending;
+    pending = new LinkedHashMap<>();
+    generation++;
+    return batch;
+  }
+
+  private void dispatch(Map<String, List<MonoSink<Validation>>> batch) {
+    batchSizes.record(batch.size());
+    if (batch.size() == 1 || !bulkSupported()) {
+      singles(batch);
+      return;
+    }
+    client.validarLote(List.copyOf(batch.keySet()))
+        .subscribe(results -> batch.forEach((id, sinks) -> succeed(sinks, results.get(id))), e -> {
+          if (e instanceof BatchUnsupportedException) {
+            bulkRetryAt = System.nanoTime() + unsupportedRecheckNanos;
+            fallbacks.increment();
+            singles(batch);
+          } else
+            batch.values().forEach(sinks -> fail(sinks, e));
+        });
+  }
+
+  /** Una llamada por id; el error de un cliente no afecta a los demás del lote. */
+  private void singles(Map<String, List<MonoSink<Validation>>> batch) {
+    batch.forEach(
+        (id, sinks) -> client.validar(id).subscribe(v -> succeed(sinks, v), e -> fail(sinks, e)));
+  }
+
+  private boolean bulkSupported() {
+    long retryAt = bulkRetryAt;
+    return retryAt == 0 || System.nanoTime() - retryAt >= 0;
+  }
+
+  private static void succeed(List<MonoSink<Validation>> sinks, Validation v) {
+    sinks.forEach(s -> s.success(v));
+  }
+
+  private static void fail(List<MonoSink<Validation>> sinks, Throwable e) {
+    sinks.forEach(s -> s.error(e));
+  }
+}
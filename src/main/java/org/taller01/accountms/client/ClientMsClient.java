@@ -0,0 +1,187 @@
+package org.taller01.accountms.client;
+
+import static org.springframework.http.HttpStatus.BAD_REQUEST;
+import static org.springframework.http.HttpStatus.SERVICE_UNAVAILABLE;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.reactor.bulkhead.operator.BulkheadOperator;
+import io.github.resilience4j.reactor.circuitbreaker.operator.CircuitBreakerOperator;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.netty.channel.ChannelOption;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+
+/**
+ * Cliente HTTP de ClientMS. Solo traduce la respuesta; no cachea.
+ *
+ * <p>
+ * Cada llamada pasa por: timeout por llamada → bulkhead (máximo de llamadas en vuelo) → circuit
+ * breaker. Con ClientMS lento o caído se falla rápido con 503 en lugar de acumular peticiones.
+ *
+ * <p>
+ * {@code clientms.requests} mide la llamada completa (incluidas las esperas y rechazos de
+ * resiliencia) con el código HTTP, o el motivo del rechazo, en la etiqueta {@code status};
+ * {@code clientms.batch.requests} hace lo mismo para las consultas por lote.
+ */
+@Component
+public class ClientMsClient {
+
+  private static final String INSTANCE = "clientms";
+
+  /** Consulta por lote: POST con la lista de ids; responde los clientes que existen. */
+  static final String BATCH_PATH = "/clientes/lote";
+
+  /** Respuestas definitivas de ClientMS (cacheables). Los fallos se emiten como error. */
+  public enum Validation {
+    EXISTS, NOT_FOUND, INVALID_ID
+  }
+
+  private final WebClient webClient;
+  private final Duration timeout;
+  private final CircuitBreaker circuitBreaker;
+  private final Bulkhead bulkhead;
+  private final MeterRegistry registry;
+
+  public ClientMsClient(WebClient.Builder builder, @Value("${clientms.base-url}") String baseUrl,
+      @Value("${clientms.connect-timeout:1s}") Duration connectTimeout,
+      @Value("${clientms.timeout:2s}") Duration timeout, CircuitBreakerRegistry circuitBreakers,
+      BulkheadRegistry bulkheads, MeterRegistry registry) {
+    HttpClient http = HttpClient.create().option(ChannelOption.CONNECT_TIMEOUT_MILLIS,
+        (int) connectTimeout.toMillis());
+    this.webClient =
+        builder.baseUrl(baseUrl).clientConnector(new ReactorClientHttpConnector(http)).build();
+    this.timeout = timeout;
+    this.circuitBreaker = circuitBreakers.circuitBreaker(INSTANCE);
+    this.bulkhead = bulkheads.bulkhead(INSTANCE);
+    this.registry = registry;
+    circuitBreaker.getEventPublisher()
+        .onStateTransition(e -> registry.counter("clientms.circuitbreaker.transitions", "from",
+            e.getStateTransition().getFromState().name(), "to",
+            e.getStateTransition().getToState().name()).increment());
+  }
+
+  /** ClientMS no expone la consulta por lote (404/405/501 en {@link #BATCH_PATH}). */
+  public static final class BatchUnsupportedException extends RuntimeException {
+    BatchUnsupportedException(int status) {
+      super("ClientMS no soporta la consulta por lote (HTTP " + status + ")", null, false, false);
+    }
+  }
+
+  public Mono<Validation> validar(String clientId) {
+    return protect("clientms.requests",
+        status -> webClient.get().uri("/clientes/{id}", clientId).exchangeToMono(resp -> {
+          status[0] = String.valueOf(resp.statusCode().value());
+          if (resp.statusCode().is2xxSuccessful())
+            return Mono.just(Validation.EXISTS);
+          if (resp.statusCode().value() == 404)
+            return Mono.just(Validation.NOT_FOUND);
+          if (resp.statusCode().value() == 400)
+            return Mono.just(Validation.INVALID_ID);
+          if (resp.statusCode().is5xxServerError())
+            return Mono.error(unavailable());
+          return Mono.empty();
+        }));
+  }
+
+  /**
+   * Valida varios clientes en una sola llamada. Todos los ids pedidos vienen en el resultado: los
+   * que no tienen formato de ObjectId quedan como {@code INVALID_ID} sin enviarse (lo mismo que
+   * respondería ClientMS id por id) y los que ClientMS no devuelve, como {@code NOT_FOUND}.
+   */
+  public Mono<Map<String, Validation>> validarLote(Collection<String> clientIds) {
+    Map<Boolean, List<String>> byFormat = clientIds.stream().distinct()
+        .collect(Collectors.partitioningBy(id -> id != null && ObjectId.isValid(id)));
+    List<String> wellFormed = byFormat.get(true);
+    Map<String, Validation> results = new HashMap<>();
+    byFormat.get(false).forEach(id -> results.put(id, Validation.INVALID_ID));
+    if (wellFormed.isEmpty())
+      return Mono.just(results);
+    return protect("clientms.batch.requests",
+        status -> webClient.post().uri(BATCH_PATH).bodyValue(wellFormed).exchangeToMono(resp -> {
+          int code = resp.statusCode().value();
+          status[0] = String.valueOf(code);
+          if (resp.statusCode().is2xxSuccessful())
+            return resp.bodyToFlux(ClientRef.class).map(ClientRef::id).collect(Collectors.toSet())
+                .map(found -> {
+                  wellFormed.forEach(id -> results.put(id,
+                      found.contains(id) ? Validation.EXISTS : Validation.NOT_FOUND));
+                  return results;
+                });
+          if (code == 404 || code == 405 || code == 501)
+            return Mono.error(new BatchUnsupportedException(code));
+          if (resp.statusCode().is5xxServerError())
+            return Mono.error(unavailable());
+          return Mono.empty();
+        }));
+  }
+
+  /** Solo interesa el id de cada cliente devuelto por la consulta por lote. */
+  @JsonIgnoreProperties(ignoreUnknown = true)
+  record ClientRef(String id) {}
+
+  /**
+   * Timeout → bulkhead → circuit breaker, y el timer {@code timerName} con el código HTTP (que la
+   * llamada escribe en {@code status[0]}) o el motivo del rechazo.
+   *
+   * <p>
+   * La llamada termina vacía ante un 4xx que no sabe interpretar: ClientMS respondió, así que el
+   * breaker lo cuenta como éxito, y aquí fuera se traduce a 400.
+   */
+  private <T> Mono<T> protect(String timerName, Function<String[], Mono<T>> call) {
+    return Mono.defer(() -> {
+      Timer.Sample sample = Timer.start(registry);
+      // Código HTTP recibido o motivo del rechazo; "cancelled" si nadie llega a fijarlo
+      String[] status = {"cancelled"};
+      return call.apply(status).timeout(timeout).transformDeferred(BulkheadOperator.of(bulkhead))
+          .transformDeferred(CircuitBreakerOperator.of(circuitBreaker))
+          .switchIfEmpty(Mono.error(
+              () -> new ResponseStatusException(BAD_REQUEST, "No se pudo validar el cliente")))
+          .onErrorMap(this::isUnavailable, e -> {
+            status[0] = reason(e);
+            registry.counter("clientms.rejections", "reason", status[0]).increment();
+            return unavailable();
+          }).doFinally(s -> sample.stop(registry.timer(timerName, "status", status[0])));
+    });
+  }
+
+  private boolean isUnavailable(Throwable e) {
+    return e instanceof TimeoutException || e instanceof CallNotPermittedException
+        || e instanceof BulkheadFullException || e instanceof WebClientRequestException;
+  }
+
+  private static String reason(Throwable e) {
+    if (e instanceof CallNotPermittedException)
+      return "circuit_open";
+    if (e instanceof BulkheadFullException)
+      return "bulkhead_full";
+    if (e instanceof TimeoutException)
+      return "timeout";
+    return "connection";
+  }
+
+  private static ResponseStatusException unavailable() {
+    return new ResponseStatusException(SERVICE_UNAVAILABLE, "ClientMS no disponible");
+  }
+}
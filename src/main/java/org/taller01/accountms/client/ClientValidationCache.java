@@ -0,0 +1,85 @@
+package org.taller01.accountms.client;
+
+import static org.springframework.http.HttpStatus.BAD_REQUEST;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import java.time.Duration;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+import org.taller01.accountms.client.ClientMsClient.Validation;
+import reactor.core.publisher.Mono;
+
+/**
+ * Caché asíncrona de validaciones de cliente. Acotada por tamaño, con TTL largo para clientes
+ * existentes y corto para 404/400. Las consultas concurrentes del mismo clientId comparten la misma
+ * llamada en vuelo, y los fallos de caché de clientes distintos se agrupan en
+ * {@link ClientLookupBatcher}; los errores (5xx, timeouts) no se cachean.
+ */
+@Component
+public class ClientValidationCache {
+
+  private final ClientLookupBatcher client;
+  private final AsyncCache<String, Validation> cache;
+
+  public ClientValidationCache(ClientLookupBatcher client, MeterRegistry registry,
+      @Value("${clientms.cache.max-size:10000}") long maxSize,
+      @Value("${clientms.cache.ttl:5m}") Duration ttl,
+      @Value("${clientms.cache.not-found-ttl:10s}") Duration notFoundTtl) {
+    this.client = client;
+    this.cache = Caffeine.newBuilder().maximumSize(maxSize)
+        .expireAfter(new OutcomeExpiry(ttl.toNanos(), notFoundTtl.toNanos())).recordStats()
+        .buildAsync();
+    CaffeineCacheMetrics.monitor(registry, cache, "clientms.validation");
+  }
+
+  public Mono<Void> validarCliente(String clientId) {
+    // suppressCancel: cancelar a un suscriptor no debe cancelar la llamada compartida
+    return Mono
+        .fromFuture(() -> cache.get(clientId, (id, executor) -> client.validar(id).toFuture()),
+            true)
+        .flatMap(ClientValidationCache::toResult);
+  }
+
+  private static Mono<Void> toResult(Validation v) {
+    return switch (v) {
+      case EXISTS -> Mono.empty();
+      case NOT_FOUND -> Mono
+          .error(new ResponseStatusException(BAD_REQUEST, "El cliente no existe"));
+      case INVALID_ID -> Mono.error(
+          new ResponseStatusException(BAD_REQUEST, "El identificador de cliente es inválido"));
+    };
+  }
+
+  private static final class OutcomeExpiry implements Expiry<String, Validation> {
+
+    private final long ttlNanos;
+    private final long negativeTtlNanos;
+
+    OutcomeExpiry(long ttlNanos, long negativeTtlNanos) {
+      this.ttlNanos = ttlNanos;
+      this.negativeTtlNanos = negativeTtlNanos;
+    }
+
+    @Override
+    public long expireAfterCreate(String key, Validation value, long currentTime) {
+      return value == Validation.EXISTS ? ttlNanos : negativeTtlNanos;
+    }
+
+    @Override
+    public long expireAfterUpdate(String key, Validation value, long currentTime,
+        long currentDuration) {
+      return expireAfterCreate(key, value, currentTime);
+    }
+
+    @Override
+    public long expireAfterRead(String key, Validation value, long currentTime,
+        long currentDuration) {
+      return currentDuration;
+    }
+  }
+}
@@ -0,0 +1,66 @@
+package org.taller01.accountms.config;
+
+import java.math.BigDecimal;
+import java.util.List;
+import org.bson.types.Decimal128;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.data.convert.ReadingConverter;
+import org.springframework.data.convert.WritingConverter;
+import org.springframework.data.mongodb.ReactiveMongoDatabaseFactory;
+import org.springframework.data.mongodb.ReactiveMongoTransactionManager;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+
+@Configuration
+public class MongoConfig {
+
+  /**
+   * Habilita transacciones multi-documento; Spring Boot expone con él un TransactionalOperator.
+   * Requiere replica set (Atlas lo es).
+   */
+  @Bean
+  public ReactiveMongoTransactionManager transactionManager(ReactiveMongoDatabaseFactory factory) {
+    return new ReactiveMongoTransactionManager(factory);
+  }
+
+  /**
+   * Por defecto Spring Data guarda {@link BigDecimal} como string: todo importe se guarda como
+   * Decimal128 (aunque el campo no declare {@code targetType}) para que $inc, filtros de rango y
+   * agregaciones funcionen en el servidor y la lectura no tenga que parsear texto.
+   */
+  @Bean
+  public MongoCustomConversions mongoCustomConversions() {
+    return new MongoCustomConversions(
+        List.of(BigDecimalToDecimal128.INSTANCE, Decimal128ToBigDecimal.INSTANCE));
+  }
+
+  @WritingConverter
+  enum BigDecimalToDecimal128 implements Converter<BigDecimal, Decimal128> {
+    INSTANCE;
+
+    @Override
+    public Decimal128 convert(BigDecimal source) {
+      return new Decimal128(source);
+    }
+  }
+
+  /** Tolera el -0 que puede dejar un $inc (bigDecimalValue() lo rechaza). */
+  @ReadingConverter
+  enum Decimal128ToBigDecimal implements Converter<Decimal128, BigDecimal> {
+    INSTANCE;
+
+    @Override
+    public BigDecimal convert(Decimal128 source) {
+      if (source.isNegative() && source.isFinite()) {
+        // Mismo valor sin el bit de signo; solo difiere si era un cero negativo
+        BigDecimal abs =
+            Decimal128.fromIEEE754BIDEncoding(source.getHigh() & Long.MAX_VALUE, source.getLow())
+                .bigDecimalValue();
+        if (abs.signum() == 0)
+          return abs;
+      }
+      return source.bigDecimalValue();
+    }
+  }
+}
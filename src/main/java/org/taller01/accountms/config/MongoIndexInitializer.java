@@ -0,0 +1,154 @@
+package org.taller01.accountms.config;
+
+import com.mongodb.ExplainVerbosity;
+import java.time.Duration;
+import java.util.List;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Sort.Direction;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+import org.springframework.data.mongodb.core.index.PartialIndexFilter;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.stereotype.Component;
+import org.taller01.accountms.domain.Account;
+import org.taller01.accountms.domain.BalanceSlot;
+import org.taller01.accountms.domain.CacheSyncToken;
+import org.taller01.accountms.domain.IdempotencyRecord;
+import org.taller01.accountms.domain.Movement;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Crea al arrancar (de forma idempotente) los índices de todas las formas de consulta sobre
+ * {@code accounts} y verifica con {@code explain} que ninguna termina en COLLSCAN. También crea el
+ * índice TTL de {@code idempotency_keys}, los del libro {@code movements}, el de
+ * {@code balance_slots} y el TTL de {@code cache_sync_tokens}.
+ *
+ * <p>
+ * Por defecto corre en segundo plano y solo avisa en el log; con
+ * {@code accountms.mongo.indexes.strict=true} bloquea el arranque y lo aborta si falla la creación
+ * o algún plan contiene COLLSCAN.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "accountms.mongo.indexes.enabled", havingValue = "true",
+    matchIfMissing = true)
+public class MongoIndexInitializer implements ApplicationRunner {
+
+  private static final String COLLECTION = "accounts";
+
+  /** Índices declarados para {@code accounts}. */
+  static final List<IndexDefinition> INDEXES =
+      List.of(new Index().on("accountNumber", Direction.ASC).unique(),
+          // findByClientId y paginación por cliente (clientId = ? ordenado por _id)
+          new Index().on("clientId", Direction.ASC).on("_id", Direction.ASC),
+          new Index().on("clientId", Direction.ASC).on("type", Direction.ASC),
+          new Index().on("clientId", Direction.ASC).on("active", Direction.ASC),
+          // Recarga de cuentas repartidas (balanceSlots > 1): solo las marcadas entran al índice
+          new Index().on("balanceSlots", Direction.ASC).sparse());
+
+  /** Libro de movimientos: pendientes de compactar (parcial, queda pequeño) e historial. */
+  static final IndexDefinition PENDING_MOVEMENTS =
+      new Index().on("accountId", Direction.ASC).on("compacted", Direction.ASC)
+          .partial(PartialIndexFilter.of(Criteria.where("compacted").is(false)));
+  static final IndexDefinition MOVEMENT_HISTORY =
+      new Index().on("accountId", Direction.ASC).on("_id", Direction.ASC);
+
+  /** Sub-saldos de cuentas repartidas, leídos siempre por cuenta. */
+  static final IndexDefinition BALANCE_SLOTS = new Index().on("accountId", Direction.ASC);
+
+  /** Formas de consulta usadas por AccountRepository y AccountService. */
+  record QueryShape(String name, Document filter, Document sort) {}
+
+  static final List<QueryShape> SHAPES = List.of(
+      new QueryShape("existsByAccountNumber", new Document("accountNumber", "SV-0000000000"), null),
+      new QueryShape("findByClientId", new Document("clientId", "x"), null),
+      new QueryShape("listByClientId (keyset)", new Document("clientId", "x"),
+          new Document("_id", 1)),
+      new QueryShape("clientId+type", new Document("clientId", "x").append("type", "SAVINGS"),
+          null),
+      new QueryShape("clientId+active", new Document("clientId", "x").append("active", true),
+          null));
+
+  private final ReactiveMongoTemplate mongo;
+  private final boolean strict;
+  private final Duration timeout;
+  private final Duration idempotencyTtl;
+  private final Duration syncTokenTtl;
+
+  public MongoIndexInitializer(ReactiveMongoTemplate mongo,
+      @Value("${accountms.mongo.indexes.strict:false}") boolean strict,
+      @Value("${accountms.mongo.indexes.timeout:30s}") Duration timeout,
+      @Value("${accountms.idempotency.ttl:24h}") Duration idempotencyTtl,
+      @Value("${accountms.cache.sync.token-ttl:24h}") Duration syncTokenTtl) {
+    this.mongo = mongo;
+    this.strict = strict;
+    this.timeout = timeout;
+    this.idempotencyTtl = idempotencyTtl;
+    this.syncTokenTtl = syncTokenTtl;
+  }
+
+  @Override
+  public void run(ApplicationArguments args) {
+    Mono<Void> bootstrap = ensureIndexes().then(verifyPlans());
+    if (strict) {
+      bootstrap.block(timeout);
+    } else {
+      bootstrap.subscribe(null,
+          e -> log.warn("No se pudieron crear/verificar los índices de {}", COLLECTION, e));
+    }
+  }
+
+  Mono<Void> ensureIndexes() {
+    return Flux.fromIterable(INDEXES).concatMap(mongo.indexOps(Account.class)::ensureIndex)
+        .doOnNext(name -> log.debug("Índice asegurado: {}.{}", COLLECTION, name))
+        .then(mongo.indexOps(IdempotencyRecord.class)
+            .ensureIndex(new Index().on("createdAt", Direction.ASC).expire(idempotencyTtl)))
+        .then(mongo.indexOps(Movement.class).ensureIndex(PENDING_MOVEMENTS))
+        .then(mongo.indexOps(Movement.class).ensureIndex(MOVEMENT_HISTORY))
+        .then(mongo.indexOps(BalanceSlot.class).ensureIndex(BALANCE_SLOTS))
+        .then(mongo.indexOps(CacheSyncToken.class)
+            .ensureIndex(new Index().on("updatedAt", Direction.ASC).expire(syncTokenTtl)))
+        .then();
+  }
+
+  Mono<Void> verifyPlans() {
+    return Flux.fromIterable(SHAPES).concatMap(shape -> explain(shape).map(plan -> {
+      if (!containsCollScan(plan))
+        return shape;
+      if (strict)
+        throw new IllegalStateException("La consulta '" + shape.name() + "' usa COLLSCAN");
+      log.warn("La consulta '{}' sobre {} usa COLLSCAN: {}", shape.name(), COLLECTION,
+          plan.toJson());
+      return shape;
+    })).then();
+  }
+
+  private Mono<Document> explain(QueryShape shape) {
+    return mongo.getCollection(COLLECTION).flatMap(c -> {
+      var find = c.find(shape.filter());
+      if (shape.sort() != null)
+        find = find.sort(shape.sort());
+      return Mono.from(find.explain(Document.class, ExplainVerbosity.QUERY_PLANNER));
+    }).map(
+        explain -> explain.get("queryPlanner", Document.class).get("winningPlan", Document.class));
+  }
+
+  /** Busca una etapa COLLSCAN en cualquier nivel del plan (inputStage, inputStages, queryPlan). */
+  static boolean containsCollScan(Object node) {
+    if (node instanceof Document doc) {
+      if ("COLLSCAN".equals(doc.get("stage")))
+        return true;
+      return doc.values().stream().anyMatch(MongoIndexInitializer::containsCollScan);
+    }
+    if (node instanceof List<?> list)
+      return list.stream().anyMatch(MongoIndexInitializer::containsCollScan);
+    return false;
+  }
+}
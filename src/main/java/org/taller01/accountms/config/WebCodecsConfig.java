@@ -0,0 +1,79 @@
+package org.taller01.accountms.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import java.util.List;
+import java.util.Map;
+import org.reactivestreams.Publisher;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerCodecConfigurer;
+import org.springframework.http.codec.json.Jackson2SmileDecoder;
+import org.springframework.http.codec.json.Jackson2SmileEncoder;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.util.MimeType;
+import org.springframework.web.reactive.config.WebFluxConfigurer;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Codificación binaria para el tráfico entre microservicios: con {@code Accept} /
+ * {@code Content-Type: application/x-jackson-smile} los mismos DTOs viajan en Smile (JSON binario,
+ * sin nombres repetidos ni números en texto). Los listados en flujo usan
+ * {@code application/stream+x-jackson-smile}. Sin esas cabeceras todo sigue en JSON.
+ *
+ * <p>
+ * WebFlux ya registra Smile si la librería está presente, pero con un ObjectMapper propio; aquí se
+ * reemplaza por uno creado desde el builder de Spring Boot para que respete la misma configuración
+ * de Jackson (módulos, {@code spring.jackson.*}) que el JSON.
+ */
+@Configuration
+public class WebCodecsConfig implements WebFluxConfigurer {
+
+  public static final String SMILE_VALUE = "application/x-jackson-smile";
+  public static final String SMILE_STREAM_VALUE = "application/stream+x-jackson-smile";
+  public static final MediaType SMILE = MediaType.parseMediaType(SMILE_VALUE);
+  /** Incluye el tipo de flujo ({@code application/stream+x-jackson-smile}). */
+  private static final MediaType SMILE_ANY =
+      MediaType.parseMediaType("application/*+x-jackson-smile");
+
+  private final ObjectMapper smileMapper;
+
+  public WebCodecsConfig(Jackson2ObjectMapperBuilder builder) {
+    this.smileMapper = builder.createXmlMapper(false).factory(new SmileFactory()).build();
+  }
+
+  @Override
+  public void configureHttpMessageCodecs(ServerCodecConfigurer configurer) {
+    // Los tipos se pasan explícitos: el constructor (mapper, tipos...) sin tipos cae en JSON
+    configurer.defaultCodecs()
+        .jackson2SmileDecoder(new Jackson2SmileDecoder(smileMapper, SMILE, SMILE_ANY));
+    configurer.defaultCodecs()
+        .jackson2SmileEncoder(new SmileArrayEncoder(smileMapper, SMILE, SMILE_ANY));
+  }
+
+  /**
+   * Un {@code Flux} con tipo no de flujo se escribe como un único arreglo Smile. El encoder base lo
+   * escribe con los separadores de JSON ({@code [ , ]}) y el resultado no es Smile válido.
+   */
+  static final class SmileArrayEncoder extends Jackson2SmileEncoder {
+
+    SmileArrayEncoder(ObjectMapper mapper, MimeType... mimeTypes) {
+      super(mapper, mimeTypes);
+    }
+
+    @Override
+    public Flux<DataBuffer> encode(Publisher<?> input, DataBufferFactory bufferFactory,
+        ResolvableType elementType, MimeType mimeType, Map<String, Object> hints) {
+      if (input instanceof Mono || mimeType == null
+          || getStreamingMediaTypes().stream().anyMatch(mimeType::isCompatibleWith))
+        return super.encode(input, bufferFactory, elementType, mimeType, hints);
+      ResolvableType listType = ResolvableType.forClassWithGenerics(List.class, elementType);
+      return Flux.from(input).collectList()
+          .map(list -> encodeValue(list, bufferFactory, listType, mimeType, hints)).flux();
+    }
+  }
+}
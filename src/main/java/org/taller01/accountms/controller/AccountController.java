@@ -4,13 +4,31 @@ import io.swagger.v3.oas.annotations.Hidden;
 import jakarta.validation.Valid;
 import java.math.BigDecimal;
 import java.net.URI;
+import java.util.List;
+import java.util.Map;
 import lombok.RequiredArgsConstructor;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.StringDecoder;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.server.reactive.ServerHttpRequest;
 import org.springframework.web.bind.annotation.*;
+import org.taller01.accountms.config.WebCodecsConfig;
+import org.taller01.accountms.domain.MovementType;
 import org.taller01.accountms.dto.request.CreateAccountRequest;
+import org.taller01.accountms.dto.request.MovementCommand;
 import org.taller01.accountms.dto.request.UpdateAccountRequest;
+import org.taller01.accountms.dto.response.AccountPage;
 import org.taller01.accountms.dto.response.AccountResponse;
+import org.taller01.accountms.dto.response.BalanceResponse;
+import org.taller01.accountms.dto.response.ImportResult;
+import org.taller01.accountms.dto.response.MovementResult;
+import org.taller01.accountms.dto.response.TransferResponse;
+import org.taller01.accountms.service.AccountImportService;
+import org.taller01.accountms.service.AccountImportService.Format;
 import org.taller01.accountms.service.AccountService;
+import org.taller01.accountms.service.IdempotencyService;
+import org.taller01.accountms.service.MovementBatchService;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
@@ -19,7 +37,18 @@ import reactor.core.publisher.Mono;
 @RequestMapping("/cuentas")
 public class AccountController {
 
+  /** Reintentos seguros de TransactionMS sobre los endpoints internos de depósito y retiro. */
+  static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+
+  static final String TEXT_CSV_VALUE = "text/csv";
+
+  /** Parte el cuerpo en líneas sin cargarlo entero en memoria. */
+  private static final StringDecoder LINES = StringDecoder.allMimeTypes(List.of("\n"), true);
+
   private final AccountService service;
+  private final MovementBatchService batchService;
+  private final IdempotencyService idempotency;
+  private final AccountImportService importService;
 
   /** POST /cuentas — crea cuenta (accountType: SAVINGS | CHECKING) */
   @PostMapping
@@ -28,22 +57,72 @@ public class AccountController {
         .map(a -> ResponseEntity.created(URI.create("/cuentas/" + a.getId())).body(a));
   }
 
-  /** GET /cuentas — listar todas */
-  @GetMapping
-  public Flux<AccountResponse> listar() {
-    return service.listAll().map(AccountResponse::from);
+  /**
+   * POST /cuentas/import — alta masiva desde NDJSON o CSV
+   * ({@code clientId,initialBalance,accountType}). Responde en NDJSON un resultado por línea, a
+   * medida que se procesa el archivo.
+   */
+  @PostMapping(value = "/import", consumes = {MediaType.APPLICATION_NDJSON_VALUE, TEXT_CSV_VALUE},
+      produces = MediaType.APPLICATION_NDJSON_VALUE)
+  public Flux<ImportResult> importar(ServerHttpRequest request) {
+    MediaType type = request.getHeaders().getContentType();
+    Format format =
+        type != null && type.isCompatibleWith(MediaType.APPLICATION_NDJSON) ? Format.NDJSON
+            : Format.CSV;
+    Flux<String> lines =
+        LINES.decode(request.getBody(), ResolvableType.forClass(String.class), null, Map.of());
+    return importService.importLines(lines, format);
   }
 
-  /** GET /cuentas/{id} — obtener por ID */
+  /** GET /cuentas?limit=&after=&fields= — listar paginado por cursor */
+  @GetMapping(produces = {MediaType.APPLICATION_JSON_VALUE, WebCodecsConfig.SMILE_VALUE})
+  public Mono<AccountPage> listar(@RequestParam(required = false) Integer limit,
+      @RequestParam(required = false) String after, @RequestParam(required = false) String fields) {
+    return service.listAll(after, limit, fields);
+  }
+
+  /** GET /cuentas (Accept: application/x-ndjson | text/event-stream) — recorrido completo */
+  @GetMapping(produces = {MediaType.APPLICATION_NDJSON_VALUE, MediaType.TEXT_EVENT_STREAM_VALUE,
+      WebCodecsConfig.SMILE_STREAM_VALUE})
+  public Flux<AccountResponse> listarStream(@RequestParam(required = false) String after,
+      @RequestParam(required = false) String fields) {
+    return service.streamAll(after, fields).map(AccountResponse::from);
+  }
+
+  /** GET /cuentas/{id}?fields= — obtener por ID */
   @GetMapping("/{id}")
-  public Mono<AccountResponse> obtener(@PathVariable String id) {
-    return service.getById(id).map(AccountResponse::from);
+  public Mono<AccountResponse> obtener(@PathVariable String id,
+      @RequestParam(required = false) String fields) {
+    return service.getById(id, fields).map(AccountResponse::from);
+  }
+
+  /** GET /cuentas/{id}/saldo — consulta de saldo (solo balance y active) */
+  @GetMapping("/{id}/saldo")
+  public Mono<BalanceResponse> saldo(@PathVariable String id) {
+    return service.getBalance(id);
+  }
+
+  /** GET /cuentas/saldos?ids=a,b,c — saldos de varias cuentas en una consulta */
+  @GetMapping("/saldos")
+  public Flux<BalanceResponse> saldos(@RequestParam List<String> ids) {
+    return service.getBalances(ids);
   }
 
-  /** GET /cuentas/cliente/{clientId} — listar por cliente (valida en ClientMS) */
-  @GetMapping("/cliente/{clientId}")
-  public Flux<AccountResponse> listarPorCliente(@PathVariable String clientId) {
-    return service.listByClientId(clientId).map(AccountResponse::from);
+  /** GET /cuentas/cliente/{clientId} — listar por cliente, paginado (valida en ClientMS) */
+  @GetMapping(value = "/cliente/{clientId}",
+      produces = {MediaType.APPLICATION_JSON_VALUE, WebCodecsConfig.SMILE_VALUE})
+  public Mono<AccountPage> listarPorCliente(@PathVariable String clientId,
+      @RequestParam(required = false) Integer limit, @RequestParam(required = false) String after,
+      @RequestParam(required = false) String fields) {
+    return service.listByClientId(clientId, after, limit, fields);
+  }
+
+  /** GET /cuentas/cliente/{clientId} en streaming (NDJSON o SSE) */
+  @GetMapping(value = "/cliente/{clientId}", produces = {MediaType.APPLICATION_NDJSON_VALUE,
+      MediaType.TEXT_EVENT_STREAM_VALUE, WebCodecsConfig.SMILE_STREAM_VALUE})
+  public Flux<AccountResponse> listarPorClienteStream(@PathVariable String clientId,
+      @RequestParam(required = false) String after, @RequestParam(required = false) String fields) {
+    return service.streamByClientId(clientId, after, fields).map(AccountResponse::from);
   }
 
   /** PUT /cuentas/{id} — actualizar 'active' (obligatorio) */
@@ -73,14 +152,40 @@ public class AccountController {
   @Hidden
   @PostMapping("/internal/{id}/deposito")
   public Mono<AccountResponse> internalDeposit(@PathVariable String id,
-      @RequestParam BigDecimal amount) {
-    return service.deposit(id, amount).map(AccountResponse::from);
+      @RequestParam BigDecimal amount,
+      @RequestHeader(name = IDEMPOTENCY_KEY, required = false) String idempotencyKey) {
+    return idempotency.execute(idempotencyKey, MovementType.DEPOSIT, id, amount,
+        () -> service.deposit(id, amount)).map(AccountResponse::from);
   }
 
   @Hidden
   @PostMapping("/internal/{id}/retiro")
   public Mono<AccountResponse> internalWithdraw(@PathVariable String id,
-      @RequestParam BigDecimal amount) {
-    return service.withdraw(id, amount).map(AccountResponse::from);
+      @RequestParam BigDecimal amount,
+      @RequestHeader(name = IDEMPOTENCY_KEY, required = false) String idempotencyKey) {
+    return idempotency.execute(idempotencyKey, MovementType.WITHDRAW, id, amount,
+        () -> service.withdraw(id, amount)).map(AccountResponse::from);
+  }
+
+  /** Transferencia entre cuentas en una sola llamada y una sola transacción */
+  @Hidden
+  @PostMapping("/internal/transferencia")
+  public Mono<TransferResponse> internalTransfer(@RequestParam String fromId,
+      @RequestParam String toId, @RequestParam BigDecimal amount) {
+    return service.transfer(fromId, toId, amount);
+  }
+
+  /** Reparte el saldo de una cuenta muy caliente en {@code count} sub-saldos (1 = sin reparto) */
+  @Hidden
+  @PutMapping("/internal/{id}/slots")
+  public Mono<AccountResponse> internalSlots(@PathVariable String id, @RequestParam int count) {
+    return service.configureSlots(id, count).map(AccountResponse::from);
+  }
+
+  /** Lote de depósitos/retiros: un resultado por movimiento, en el mismo orden */
+  @Hidden
+  @PostMapping("/internal/movimientos")
+  public Flux<MovementResult> internalBatch(@RequestBody List<MovementCommand> commands) {
+    return batchService.apply(commands);
   }
 }
@@ -0,0 +1,110 @@
+package org.taller01.accountms.controller;
+
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.handler.annotation.DestinationVariable;
+import org.springframework.messaging.handler.annotation.MessageMapping;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.server.ResponseStatusException;
+import org.taller01.accountms.domain.MovementType;
+import org.taller01.accountms.dto.request.MovementCommand;
+import org.taller01.accountms.dto.response.AccountResponse;
+import org.taller01.accountms.dto.response.BalanceResponse;
+import org.taller01.accountms.dto.response.MovementResult;
+import org.taller01.accountms.dto.response.MovementResult.Status;
+import org.taller01.accountms.exception.ResourceNotFoundException;
+import org.taller01.accountms.service.AccountService;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Comandos de dominio por RSocket ({@code spring.rsocket.server.port}) para TransactionMS: una
+ * conexión multiplexada en lugar de una petición HTTP por movimiento. Los endpoints HTTP siguen
+ * igual.
+ *
+ * <p>
+ * Request-response: {@code cuentas.{id}}, {@code cuentas.{id}.saldo}, {@code cuentas.{id}.deposito}
+ * y {@code cuentas.{id}.retiro} (payload: monto). Request-channel: {@code cuentas.movimientos}
+ * recibe un flujo de {@link MovementCommand} y devuelve un {@link MovementResult} por comando, en
+ * el mismo orden; la demanda del cliente limita cuántos comandos se leen y como máximo
+ * {@code accountms.rsocket.channel-concurrency} se aplican a la vez. Los comandos de una misma
+ * cuenta se aplican de a uno y en el orden recibido; los de cuentas distintas, en paralelo.
+ */
+@Controller
+public class AccountRSocketController {
+
+  private final AccountService service;
+  private final int channelConcurrency;
+
+  public AccountRSocketController(AccountService service,
+      @Value("${accountms.rsocket.channel-concurrency:64}") int channelConcurrency) {
+    this.service = service;
+    this.channelConcurrency = channelConcurrency;
+  }
+
+  @MessageMapping("cuentas.{id}")
+  public Mono<AccountResponse> obtener(@DestinationVariable String id) {
+    return service.getById(id).map(AccountResponse::from);
+  }
+
+  @MessageMapping("cuentas.{id}.saldo")
+  public Mono<BalanceResponse> saldo(@DestinationVariable String id) {
+    return service.getBalance(id);
+  }
+
+  @MessageMapping("cuentas.{id}.deposito")
+  public Mono<AccountResponse> deposito(@DestinationVariable String id, BigDecimal amount) {
+    return service.deposit(id, amount).map(AccountResponse::from);
+  }
+
+  @MessageMapping("cuentas.{id}.retiro")
+  public Mono<AccountResponse> retiro(@DestinationVariable String id, BigDecimal amount) {
+    return service.withdraw(id, amount).map(AccountResponse::from);
+  }
+
+  /**
+   * Saldo insuficiente, cuenta inexistente y comando inválido son resultados del comando; solo un
+   * error inesperado (p. ej. Mongo caído) cierra el canal.
+   */
+  @MessageMapping("cuentas.movimientos")
+  public Flux<MovementResult> movimientos(Flux<MovementCommand> commands) {
+    // Último comando pendiente de cada cuenta: el siguiente de esa cuenta espera a que termine
+    Map<String, Mono<MovementResult>> tails = new ConcurrentHashMap<>();
+    return commands.index().map(indexed -> {
+      int index = indexed.getT1().intValue();
+      MovementCommand c = indexed.getT2();
+      if (c.accountId() == null)
+        return apply(index, c);
+      Mono<MovementResult> previous = tails.get(c.accountId());
+      Mono<MovementResult> next =
+          (previous == null ? Mono.<Void>empty() : previous.onErrorResume(e -> Mono.empty()).then())
+              .then(Mono.defer(() -> apply(index, c))).cache();
+      tails.put(c.accountId(), next);
+      return next.doFinally(s -> tails.remove(c.accountId(), next));
+    }).flatMapSequential(result -> result, channelConcurrency);
+  }
+
+  private Mono<MovementResult> apply(int index, MovementCommand c) {
+    if (c.accountId() == null || c.type() == null)
+      return Mono.just(result(index, c, Status.INVALID, null));
+    Mono<BigDecimal> balance =
+        (c.type() == MovementType.DEPOSIT ? service.deposit(c.accountId(), c.amount())
+            : service.withdraw(c.accountId(), c.amount())).map(acc -> acc.getBalance());
+    return balance.map(b -> result(index, c, Status.APPLIED, b))
+        .onErrorResume(ResourceNotFoundException.class,
+            e -> Mono.just(result(index, c, Status.ACCOUNT_NOT_FOUND, null)))
+        .onErrorResume(
+            e -> e instanceof ResponseStatusException rse && rse.getStatusCode().value() == 409,
+            e -> Mono.just(result(index, c, Status.INSUFFICIENT_FUNDS, null)))
+        .onErrorResume(
+            e -> e instanceof ResponseStatusException rse && rse.getStatusCode().value() == 400,
+            e -> Mono.just(result(index, c, Status.INVALID, null)));
+  }
+
+  private static MovementResult result(int index, MovementCommand c, Status status,
+      BigDecimal balance) {
+    return new MovementResult(index, c.accountId(), c.type(), c.amount(), status, balance);
+  }
+}
@@ -5,19 +5,25 @@ import lombok.*;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.Field;
+import org.springframework.data.mongodb.core.mapping.FieldType;
 
 @Document("accounts")
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
-@Builder
+@Builder(toBuilder = true)
 public class Account {
   @Id
   private String id;
   private String clientId;
   @Indexed(unique = true)
   private String accountNumber;
+  /** Decimal128 (no string) para poder aplicar $inc y filtros de rango en el servidor. */
+  @Field(targetType = FieldType.DECIMAL128)
   private BigDecimal balance;
   private Boolean active;
   private AccountType type;
+  /** Mayor que 1: el saldo está repartido en ese número de slots (ver BalanceSlot). */
+  private Integer balanceSlots;
 }
@@ -0,0 +1,26 @@
+package org.taller01.accountms.domain;
+
+import java.math.BigDecimal;
+import lombok.*;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.Field;
+import org.springframework.data.mongodb.core.mapping.FieldType;
+
+/**
+ * Sub-saldo {@code slot} (1..N-1) de una cuenta repartida; el slot 0 es {@code accounts.balance}.
+ * Su {@code _id} es {@code <accountId>:<slot>}.
+ */
+@Document("balance_slots")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class BalanceSlot {
+  @Id
+  private String id;
+  private String accountId;
+  private int slot;
+  @Field(targetType = FieldType.DECIMAL128)
+  private BigDecimal balance;
+}
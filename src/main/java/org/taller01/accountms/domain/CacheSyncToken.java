@@ -0,0 +1,24 @@
+package org.taller01.accountms.domain;
+
+import java.time.Instant;
+import lombok.*;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/**
+ * Último resume token del change stream de caché procesado por un nodo ({@code _id} = id del nodo).
+ * Expira por el índice TTL sobre {@code updatedAt}, así que los nodos retirados no dejan
+ * documentos.
+ */
+@Document("cache_sync_tokens")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class CacheSyncToken {
+  @Id
+  private String nodeId;
+  /** Campo {@code _data} del resume token. */
+  private String token;
+  private Instant updatedAt;
+}
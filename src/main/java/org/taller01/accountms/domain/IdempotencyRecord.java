@@ -0,0 +1,30 @@
+package org.taller01.accountms.domain;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import lombok.*;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.Field;
+import org.springframework.data.mongodb.core.mapping.FieldType;
+
+/**
+ * Comando interno ya aplicado, identificado por su {@code Idempotency-Key}. Se escribe en la misma
+ * transacción que el cambio de saldo y expira por el índice TTL sobre {@code createdAt}.
+ */
+@Document("idempotency_keys")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class IdempotencyRecord {
+  @Id
+  private String key;
+  private MovementType type;
+  private String accountId;
+  @Field(targetType = FieldType.DECIMAL128)
+  private BigDecimal amount;
+  /** Estado de la cuenta tras el comando: es la respuesta que se repite. */
+  private Account result;
+  private Instant createdAt;
+}
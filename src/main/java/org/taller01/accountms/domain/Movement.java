@@ -0,0 +1,34 @@
+package org.taller01.accountms.domain;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import lombok.*;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.Field;
+import org.springframework.data.mongodb.core.mapping.FieldType;
+
+/**
+ * Entrada del libro de movimientos (solo inserción). Mientras {@code compacted} es false el
+ * movimiento aún no está incluido en el saldo guardado en {@code accounts}.
+ */
+@Document("movements")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class Movement {
+  @Id
+  private String id;
+  private String accountId;
+  private MovementType type;
+  /** Siempre positivo; el signo lo da {@code type}. */
+  @Field(targetType = FieldType.DECIMAL128)
+  private BigDecimal amount;
+  private boolean compacted;
+  private Instant createdAt;
+
+  public BigDecimal signedAmount() {
+    return type == MovementType.WITHDRAW ? amount.negate() : amount;
+  }
+}
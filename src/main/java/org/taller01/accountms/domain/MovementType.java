@@ -0,0 +1,5 @@
+package org.taller01.accountms.domain;
+
+public enum MovementType {
+  DEPOSIT, WITHDRAW
+}
@@ -0,0 +1,6 @@
+package org.taller01.accountms.dto.request;
+
+import java.math.BigDecimal;
+import org.taller01.accountms.domain.MovementType;
+
+public record MovementCommand(String accountId,MovementType type,BigDecimal amount){}
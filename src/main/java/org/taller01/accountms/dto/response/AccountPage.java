@@ -0,0 +1,15 @@
+package org.taller01.accountms.dto.response;
+
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/** Página de cuentas; {@code nextCursor} es null en la última página. */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class AccountPage {
+  private List<AccountResponse> items;
+  private String nextCursor;
+}
@@ -1,5 +1,6 @@
 package org.taller01.accountms.dto.response;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import java.math.BigDecimal;
 import lombok.AllArgsConstructor;
 import lombok.Data;
@@ -7,7 +8,9 @@ import lombok.NoArgsConstructor;
 import org.taller01.accountms.domain.Account;
 import org.taller01.accountms.domain.AccountType;
 
+/** Los campos nulos se omiten: con {@code fields=} solo se serializa lo proyectado. */
 @Data
+@JsonInclude(JsonInclude.Include.NON_NULL)
 @NoArgsConstructor
 @AllArgsConstructor
 public class AccountResponse {
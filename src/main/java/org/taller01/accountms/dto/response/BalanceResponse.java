@@ -0,0 +1,20 @@
+package org.taller01.accountms.dto.response;
+
+import java.math.BigDecimal;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Consulta de saldo: solo id, saldo real y estado. AccountService lo arma desde una Account leída
+ * con proyección ({@code balance}, {@code active}, {@code balanceSlots}), completa en modo libro o
+ * desde la caché.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BalanceResponse {
+  private String id;
+  private BigDecimal balance;
+  private Boolean active;
+}
@@ -0,0 +1,34 @@
+package org.taller01.accountms.dto.response;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Resultado de una fila de la importación masiva; {@code line} es el número de línea del archivo.
+ * Las filas creadas traen {@code id} y {@code accountNumber}; las rechazadas, {@code error}.
+ */
+@Data
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@NoArgsConstructor
+@AllArgsConstructor
+public class ImportResult {
+  private long line;
+  private Status status;
+  private String id;
+  private String accountNumber;
+  private String error;
+
+  public static ImportResult created(long line, String id, String accountNumber) {
+    return new ImportResult(line, Status.CREATED, id, accountNumber, null);
+  }
+
+  public static ImportResult rejected(long line, String error) {
+    return new ImportResult(line, Status.REJECTED, null, null, error);
+  }
+
+  public enum Status {
+    CREATED, REJECTED
+  }
+}
@@ -0,0 +1,26 @@
+package org.taller01.accountms.dto.response;
+
+import java.math.BigDecimal;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.taller01.accountms.domain.MovementType;
+
+/** Resultado de un movimiento dentro de un lote; {@code balance} es el saldo tras aplicarlo. */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MovementResult {
+  private int index;
+  private String accountId;
+  private MovementType type;
+  private BigDecimal amount;
+  private Status status;
+  private BigDecimal balance;
+
+  public enum Status {
+    APPLIED, INSUFFICIENT_FUNDS, ACCOUNT_NOT_FOUND,
+    /** Comando mal formado (sin cuenta o tipo, monto no positivo); no se aplicó. */
+    INVALID
+  }
+}
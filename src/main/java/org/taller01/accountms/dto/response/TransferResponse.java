@@ -0,0 +1,14 @@
+package org.taller01.accountms.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/** Resultado de una transferencia: ambas cuentas con el saldo ya confirmado. */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TransferResponse {
+  private AccountResponse from;
+  private AccountResponse to;
+}
@@ -0,0 +1,76 @@
+package org.taller01.accountms.service;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.taller01.accountms.domain.Account;
+import reactor.core.publisher.Mono;
+
+/**
+ * Caché read-through de cuentas por id, acotada por tamaño y TTL. Las lecturas concurrentes de una
+ * misma cuenta comparten la carga en vuelo. Cada escritura en AccountService la actualiza
+ * ({@link #put}) o la invalida ({@link #invalidate}); los depósitos y retiros siempre invalidan,
+ * porque sus resultados concurrentes pueden llegar desordenados. Una escritura durante una carga en
+ * vuelo reemplaza esa carga, así que el valor viejo nunca se reinstala. Las escrituras de otras
+ * réplicas llegan por {@link AccountCacheSync}.
+ *
+ * <p>
+ * Account es mutable: se guardan y entregan copias para que nadie modifique la entrada cacheada.
+ */
+@Component
+public class AccountCache {
+
+  private final AsyncCache<String, Account> cache;
+
+  public AccountCache(MeterRegistry registry,
+      @Value("${accountms.cache.max-size:50000}") long maxSize,
+      @Value("${accountms.cache.ttl:30s}") Duration ttl) {
+    this.cache =
+        Caffeine.newBuilder().maximumSize(maxSize).expireAfterWrite(ttl).recordStats().buildAsync();
+    CaffeineCacheMetrics.monitor(registry, cache, "accounts");
+    Gauge.builder("cache.hit.ratio", cache, c -> c.synchronous().stats().hitRate())
+        .tag("cache", "accounts").register(registry);
+  }
+
+  /** Devuelve la cuenta cacheada o la carga con {@code loader} (una cuenta vacía no se cachea). */
+  public Mono<Account> get(String id, Function<String, Mono<Account>> loader) {
+    return Mono
+        .fromFuture(() -> cache.get(id, (key, executor) -> loader.apply(key).toFuture()), true)
+        .map(AccountCache::copy);
+  }
+
+  /** Solo memoria: null si no está cacheada (o su carga sigue en vuelo). */
+  public Account getIfPresent(String id) {
+    CompletableFuture<Account> f = cache.getIfPresent(id);
+    if (f == null || !f.isDone() || f.isCompletedExceptionally())
+      return null;
+    Account acc = f.getNow(null);
+    return acc == null ? null : copy(acc);
+  }
+
+  public Account put(Account account) {
+    if (account.getId() == null)
+      return account;
+    cache.put(account.getId(), CompletableFuture.completedFuture(copy(account)));
+    return account;
+  }
+
+  public void invalidate(String id) {
+    cache.synchronous().invalidate(id);
+  }
+
+  public void invalidateAll() {
+    cache.synchronous().invalidateAll();
+  }
+
+  private static Account copy(Account a) {
+    return a.toBuilder().build();
+  }
+}
@@ -0,0 +1,224 @@
+package org.taller01.accountms.service;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+import com.mongodb.MongoException;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.OperationType;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.BsonDateTime;
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.data.mongodb.core.ChangeStreamEvent;
+import org.springframework.data.mongodb.core.ChangeStreamOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+import org.taller01.accountms.domain.CacheSyncToken;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+/**
+ * Coherencia de {@link AccountCache} entre réplicas: un change stream sobre {@code accounts} y
+ * {@code balance_slots} (incluidas las altas de slots) invalida en cada nodo la cuenta que cambió,
+ * la escribiera quien la escribiera (también las propias, que así se recargan una vez de Mongo). Un
+ * drop, rename o invalidate vacía la caché entera.
+ *
+ * <p>
+ * El último resume token procesado se guarda cada {@code accountms.cache.sync.token-save-interval}
+ * en {@code cache_sync_tokens} (uno por nodo), y al reiniciar el stream, por error o por arranque,
+ * se reanuda desde él. Sin token, o si Mongo ya no puede reanudar desde él (historia fuera del
+ * oplog), se vacía la caché porque no se sabe qué cambió entretanto.
+ *
+ * <p>
+ * {@code accountms.cache.invalidation.lag} mide cuánto tarda en aplicarse cada invalidación desde
+ * la escritura (wallTime del evento).
+ */
+@Slf4j
+@Service
+public class AccountCacheSync implements ApplicationRunner, DisposableBean {
+
+  static final String ACCOUNTS = "accounts";
+  static final String BALANCE_SLOTS = "balance_slots";
+
+  /** InvalidResumeToken, ChangeStreamFatalError y ChangeStreamHistoryLost. */
+  private static final Set<Integer> UNRESUMABLE = Set.of(260, 280, 286);
+
+  private static final Document FILTER = new Document("$match",
+      new Document("$or", List.of(
+          new Document("ns.coll", new Document("$in", List.of(ACCOUNTS, BALANCE_SLOTS))).append(
+              "operationType",
+              new Document("$in", List.of("update", "replace", "delete", "drop", "rename"))),
+          // Un slot nuevo cambia el saldo de su cuenta; una cuenta nueva aún no está en caché
+          new Document("ns.coll", BALANCE_SLOTS).append("operationType", "insert"), new Document(
+              "operationType", new Document("$in", List.of("dropDatabase", "invalidate"))))));
+
+  private final ReactiveMongoTemplate mongo;
+  private final AccountCache cache;
+  private final boolean enabled;
+  private final String nodeId;
+  private final Duration tokenSaveInterval;
+  private final Timer lag;
+  private final Counter resets;
+  // Campo _data del último evento aplicado; null = empezar desde ahora
+  private final AtomicReference<String> token = new AtomicReference<>();
+  private volatile String savedToken;
+  private Disposable listener;
+  private Disposable saver;
+
+  public AccountCacheSync(ReactiveMongoTemplate mongo, AccountCache cache, MeterRegistry registry,
+      @Value("${accountms.cache.sync.enabled:true}") boolean enabled,
+      @Value("${accountms.cache.sync.node-id:${HOSTNAME:accountms}}") String nodeId,
+      @Value("${accountms.cache.sync.token-save-interval:5s}") Duration tokenSaveInterval) {
+    this.mongo = mongo;
+    this.cache = cache;
+    this.enabled = enabled;
+    this.nodeId = nodeId;
+    this.tokenSaveInterval = tokenSaveInterval;
+    this.lag = Timer.builder("accountms.cache.invalidation.lag")
+        .description("Tiempo desde la escritura en Mongo hasta invalidar la caché local")
+        .register(registry);
+    this.resets = Counter.builder("accountms.cache.sync.resets")
+        .description("Vaciados completos de la caché por no poder reanudar el change stream")
+        .register(registry);
+  }
+
+  @Override
+  public void run(ApplicationArguments args) {
+    if (!enabled)
+      return;
+    listener = loadToken().thenMany(listen()).subscribe();
+    saver = Flux.interval(tokenSaveInterval, tokenSaveInterval).onBackpressureDrop()
+        .concatMap(tick -> saveToken().onErrorResume(e -> {
+          log.warn("No se pudo guardar el resume token de {}", nodeId, e);
+          return Mono.empty();
+        }), 0).subscribe();
+  }
+
+  @Override
+  public void destroy() {
+    if (listener != null)
+      listener.dispose();
+    if (saver != null)
+      saver.dispose();
+  }
+
+  Mono<Void> loadToken() {
+    return mongo.findById(nodeId, CacheSyncToken.class).doOnNext(t -> {
+      token.set(t.getToken());
+      savedToken = t.getToken();
+    }).onErrorResume(e -> {
+      log.warn("No se pudo leer el resume token de {}", nodeId, e);
+      return Mono.empty();
+    }).then();
+  }
+
+  /** El stream reabierto tras un error o un invalidate, siempre desde el último token. */
+  Flux<ChangeStreamEvent<Document>> listen() {
+    return Flux.defer(this::watch).repeatWhen(done -> done.delayElements(Duration.ofSeconds(1)))
+        .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1))
+            .maxBackoff(Duration.ofMinutes(1)).doBeforeRetry(
+                s -> log.warn("Change stream de cuentas interrumpido; reintentando", s.failure())));
+  }
+
+  private Flux<ChangeStreamEvent<Document>> watch() {
+    String resumeFrom = token.get();
+    ChangeStreamOptions.ChangeStreamOptionsBuilder options =
+        ChangeStreamOptions.builder().filter(FILTER);
+    if (resumeFrom == null)
+      reset();
+    else
+      options.resumeAfter(new BsonDocument("_data", new BsonString(resumeFrom)));
+    return mongo.changeStream((String) null, options.build(), Document.class).doOnNext(this::apply)
+        .onErrorResume(e -> resumeFrom != null && isUnresumable(e), e -> {
+          log.warn("No se puede reanudar el change stream de cuentas; se vacía la caché", e);
+          token.compareAndSet(resumeFrom, null);
+          return Mono.empty();
+        });
+  }
+
+  void apply(ChangeStreamEvent<Document> event) {
+    ChangeStreamDocument<Document> raw = event.getRaw();
+    switch (event.getOperationType()) {
+      case INSERT, UPDATE, REPLACE, DELETE -> {
+        String id = accountId(event.getCollectionName(), raw.getDocumentKey());
+        if (id != null)
+          cache.invalidate(id);
+      }
+      default -> reset();
+    }
+    // Tras un invalidate el stream se cierra y ya no se puede reanudar con resumeAfter
+    token.set(event.getOperationType() == OperationType.INVALIDATE ? null
+        : resumeData(event.getResumeToken()));
+    Instant writtenAt = writtenAt(event);
+    if (writtenAt != null)
+      lag.record(Math.max(0, System.currentTimeMillis() - writtenAt.toEpochMilli()),
+          TimeUnit.MILLISECONDS);
+  }
+
+  Mono<Void> saveToken() {
+    String current = token.get();
+    if (Objects.equals(current, savedToken))
+      return Mono.empty();
+    Mono<?> write =
+        current == null ? mongo.remove(Query.query(where("_id").is(nodeId)), CacheSyncToken.class)
+            : mongo.save(new CacheSyncToken(nodeId, current, Instant.now()));
+    return write.doOnSuccess(r -> savedToken = current).then();
+  }
+
+  private void reset() {
+    cache.invalidateAll();
+    resets.increment();
+  }
+
+  /** Las cuentas se identifican por su {@code _id}; los slots por {@code <accountId>:<slot>}. */
+  static String accountId(String collection, BsonDocument documentKey) {
+    if (documentKey == null || !documentKey.containsKey("_id"))
+      return null;
+    BsonValue key = documentKey.get("_id");
+    String id = key.isObjectId() ? key.asObjectId().getValue().toHexString()
+        : key.isString() ? key.asString().getValue() : null;
+    if (id == null || !BALANCE_SLOTS.equals(collection))
+      return id;
+    int sep = id.lastIndexOf(':');
+    return sep < 0 ? null : id.substring(0, sep);
+  }
+
+  private static String resumeData(BsonValue resumeToken) {
+    if (resumeToken == null || !resumeToken.isDocument())
+      return null;
+    BsonValue data = resumeToken.asDocument().get("_data");
+    return data != null && data.isString() ? data.asString().getValue() : null;
+  }
+
+  /** wallTime (milisegundos) si el servidor lo envía; si no, el clusterTime (segundos). */
+  private static Instant writtenAt(ChangeStreamEvent<Document> event) {
+    BsonDateTime wallTime = event.getRaw() != null ? event.getRaw().getWallTime() : null;
+    return wallTime != null ? Instant.ofEpochMilli(wallTime.getValue()) : event.getTimestamp();
+  }
+
+  static boolean isUnresumable(Throwable e) {
+    for (Throwable t = e; t != null; t = t.getCause())
+      if (t instanceof MongoException me)
+        return UNRESUMABLE.contains(me.getCode());
+    return false;
+  }
+}
@@ -0,0 +1,216 @@
+package org.taller01.accountms.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.validation.Validator;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+import org.taller01.accountms.client.ClientValidationCache;
+import org.taller01.accountms.domain.Account;
+import org.taller01.accountms.domain.AccountType;
+import org.taller01.accountms.dto.request.CreateAccountRequest;
+import org.taller01.accountms.dto.response.ImportResult;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Alta masiva de cuentas en flujo (NDJSON o CSV). Las líneas se procesan en bloques de
+ * {@code accountms.import.chunk-size}: por bloque se valida cada clientId distinto una sola vez
+ * (con la caché de ClientMS), se reservan los números de cuenta de cada tipo con un solo $inc y se
+ * insertan las cuentas con un bulkWrite no ordenado. Se devuelve un resultado por línea, en orden.
+ *
+ * <p>
+ * Solo hay un bloque en proceso y la lectura del cuerpo sigue la demanda de la respuesta, así que
+ * la memoria no depende del tamaño del archivo. Las cuentas importadas no entran a la caché.
+ */
+@Service
+public class AccountImportService {
+
+  /** Columnas del CSV (la cabecera es opcional). */
+  static final String CSV_HEADER = "clientId,initialBalance,accountType";
+
+  public enum Format {
+    NDJSON, CSV
+  }
+
+  private final ReactiveMongoTemplate mongo;
+  private final ClientValidationCache clients;
+  private final AccountNumberAllocator numbers;
+  private final Validator validator;
+  private final ObjectMapper json;
+  private final int chunkSize;
+  private final int clientConcurrency;
+  private final Counter created;
+  private final Counter rejected;
+
+  public AccountImportService(ReactiveMongoTemplate mongo, ClientValidationCache clients,
+      AccountNumberAllocator numbers, Validator validator, ObjectMapper json,
+      MeterRegistry registry, @Value("${accountms.import.chunk-size:500}") int chunkSize,
+      @Value("${accountms.import.client-concurrency:8}") int clientConcurrency) {
+    this.mongo = mongo;
+    this.clients = clients;
+    this.numbers = numbers;
+    this.validator = validator;
+    this.json = json;
+    this.chunkSize = chunkSize;
+    this.clientConcurrency = clientConcurrency;
+    this.created = Counter.builder("accountms.import.rows").tag("status", "created")
+        .description("Filas de importación masiva").register(registry);
+    this.rejected = Counter.builder("accountms.import.rows").tag("status", "rejected")
+        .description("Filas de importación masiva").register(registry);
+  }
+
+  /** Línea ya interpretada: la solicitud o el motivo por el que no se pudo leer/validar. */
+  record Row(long line, CreateAccountRequest request, String error) {}
+
+  public Flux<ImportResult> importLines(Flux<String> lines, Format format) {
+    return lines.index().filter(l -> !l.getT2().isBlank())
+        .filter(l -> format != Format.CSV || !l.getT2().strip().equalsIgnoreCase(CSV_HEADER))
+        .map(l -> parse(l.getT1() + 1, l.getT2().strip(), format)).buffer(chunkSize)
+        // concatMap con prefetch 1: a lo sumo un bloque en proceso y otro leyéndose
+        .concatMap(this::importChunk, 1).flatMapIterable(results -> results).doOnNext(
+            r -> (r.getStatus() == ImportResult.Status.CREATED ? created : rejected).increment());
+  }
+
+  private Row parse(long line, String text, Format format) {
+    CreateAccountRequest req;
+    try {
+      req = format == Format.NDJSON ? json.readValue(text, CreateAccountRequest.class)
+          : parseCsv(text);
+    } catch (JsonProcessingException | IllegalArgumentException e) {
+      req = null;
+    }
+    if (req == null)
+      return new Row(line, null, "Fila con formato incorrecto");
+    String violations =
+        validator.validate(req).stream().map(v -> v.getPropertyPath() + ": " + v.getMessage())
+            .sorted().collect(Collectors.joining(", "));
+    return violations.isEmpty() ? new Row(line, req, null) : new Row(line, null, violations);
+  }
+
+  private static CreateAccountRequest parseCsv(String text) {
+    String[] cols = text.split(",", -1);
+    if (cols.length != 3)
+      throw new IllegalArgumentException("Se esperaban 3 columnas");
+    String balance = cols[1].strip();
+    String type = cols[2].strip();
+    return new CreateAccountRequest(cols[0].strip(),
+        balance.isEmpty() ? null : new BigDecimal(balance),
+        type.isEmpty() ? null : AccountType.valueOf(type));
+  }
+
+  private Mono<List<ImportResult>> importChunk(List<Row> rows) {
+    List<String> clientIds = rows.stream().filter(r -> r.request() != null)
+        .map(r -> r.request().clientId()).distinct().toList();
+    return Flux.fromIterable(clientIds)
+        .flatMap(id -> clients.validarCliente(id).thenReturn(Optional.<String>empty())
+            .onErrorResume(e -> Mono.just(Optional.of(reason(e))))
+            .map(error -> Map.entry(id, error)), clientConcurrency)
+        .collectMap(Map.Entry::getKey, Map.Entry::getValue)
+        .flatMap(clientErrors -> insert(rows, clientErrors));
+  }
+
+  private Mono<List<ImportResult>> insert(List<Row> rows,
+      Map<String, Optional<String>> clientErrors) {
+    List<Row> accepted = rows.stream()
+        .filter(r -> r.request() != null && clientErrors.get(r.request().clientId()).isEmpty())
+        .toList();
+    Map<AccountType, List<Row>> byType =
+        accepted.stream().collect(Collectors.groupingBy(r -> r.request().accountType()));
+
+    return Flux
+        .fromIterable(byType.entrySet()).concatMap(e -> numbers
+            .nextBatch(e.getKey(), e.getValue().size()).map(nums -> accounts(e.getValue(), nums)))
+        .collectList().flatMap(groups -> {
+          Map<Long, Account> byLine = new HashMap<>();
+          groups.forEach(byLine::putAll);
+          List<Account> toInsert = new ArrayList<>(byLine.values());
+          return write(toInsert).map(failures -> results(rows, clientErrors, byLine, failures));
+        });
+  }
+
+  private static Map<Long, Account> accounts(List<Row> rows, List<String> nums) {
+    Map<Long, Account> byLine = new HashMap<>();
+    Iterator<String> it = nums.iterator();
+    for (Row r : rows) {
+      CreateAccountRequest req = r.request();
+      byLine.put(r.line(),
+          Account.builder().id(new ObjectId().toHexString()).clientId(req.clientId())
+              .accountNumber(it.next()).balance(req.initialBalance()).active(true)
+              .type(req.accountType()).build());
+    }
+    return byLine;
+  }
+
+  /**
+   * Inserción no ordenada: un documento rechazado no detiene al resto. Devuelve el error de cada
+   * cuenta que no se insertó, por id.
+   */
+  private Mono<Map<String, String>> write(List<Account> accounts) {
+    if (accounts.isEmpty())
+      return Mono.just(Map.of());
+    return mongo.bulkOps(BulkMode.UNORDERED, Account.class).insert(accounts).execute()
+        .thenReturn(Map.<String, String>of()).onErrorResume(e -> bulkErrors(e) != null,
+            e -> Mono.just(bulkErrors(e).stream()
+                .collect(Collectors.toMap(err -> accounts.get(err.getIndex()).getId(),
+                    AccountImportService::writeError, (a, b) -> a))));
+  }
+
+  private static List<BulkWriteError> bulkErrors(Throwable e) {
+    for (Throwable t = e; t != null; t = t.getCause()) {
+      if (t instanceof BulkOperationException boe)
+        return boe.getErrors();
+      if (t instanceof MongoBulkWriteException mbwe)
+        return mbwe.getWriteErrors();
+    }
+    return null;
+  }
+
+  private static String writeError(BulkWriteError err) {
+    return err.getCode() == 11000 ? "Número de cuenta duplicado" : "No se pudo guardar la cuenta";
+  }
+
+  private static List<ImportResult> results(List<Row> rows,
+      Map<String, Optional<String>> clientErrors, Map<Long, Account> byLine,
+      Map<String, String> failures) {
+    List<ImportResult> out = new ArrayList<>(rows.size());
+    for (Row r : rows) {
+      if (r.request() == null) {
+        out.add(ImportResult.rejected(r.line(), r.error()));
+        continue;
+      }
+      Optional<String> clientError = clientErrors.get(r.request().clientId());
+      if (clientError.isPresent()) {
+        out.add(ImportResult.rejected(r.line(), clientError.get()));
+        continue;
+      }
+      Account acc = byLine.get(r.line());
+      String failure = failures.get(acc.getId());
+      out.add(failure != null ? ImportResult.rejected(r.line(), failure)
+          : ImportResult.created(r.line(), acc.getId(), acc.getAccountNumber()));
+    }
+    return out;
+  }
+
+  private static String reason(Throwable e) {
+    return e instanceof ResponseStatusException rse && rse.getReason() != null ? rse.getReason()
+        : "No se pudo validar el cliente";
+  }
+}
@@ -0,0 +1,124 @@
+package org.taller01.accountms.service;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.util.List;
+import java.util.stream.LongStream;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+import org.taller01.accountms.domain.AccountType;
+import reactor.core.publisher.Mono;
+
+/**
+ * Genera números de cuenta únicos sin consultar si existen. Cada instancia reserva bloques de
+ * {@code blockSize} números por prefijo con un único $inc sobre la colección {@code counters} y los
+ * entrega desde memoria; los bloques de distintas instancias nunca se solapan. Un reinicio descarta
+ * el resto del bloque (quedan huecos, no duplicados).
+ *
+ * <p>
+ * Formato: {@code SV-0000000001} (10 dígitos). Los números antiguos de 6 dígitos no pueden
+ * colisionar con este formato.
+ *
+ * <p>
+ * Como no hay reintentos, la métrica útil es {@code accountms.account.number.blocks}: cuántos
+ * bloques se reservan (viajes a Mongo) y cuánto tarda cada reserva.
+ */
+@Component
+public class AccountNumberAllocator {
+
+  private static final String COLLECTION = "counters";
+
+  private final ReactiveMongoTemplate mongo;
+  private final int blockSize;
+  private final MeterRegistry registry;
+  private final Sequence savings = new Sequence("SV");
+  private final Sequence checking = new Sequence("CH");
+
+  public AccountNumberAllocator(ReactiveMongoTemplate mongo,
+      @Value("${accountms.account-number.block-size:100}") int blockSize, MeterRegistry registry) {
+    this.mongo = mongo;
+    this.blockSize = blockSize;
+    this.registry = registry;
+  }
+
+  public Mono<String> next(AccountType type) {
+    Sequence seq = type == AccountType.SAVINGS ? savings : checking;
+    return seq.next().map(n -> format(seq.prefix, n));
+  }
+
+  /**
+   * Importación masiva: reserva un rango propio de {@code count} números con un solo $inc, sin
+   * consumir el bloque en memoria que usan las altas individuales.
+   */
+  public Mono<List<String>> nextBatch(AccountType type, int count) {
+    String prefix = (type == AccountType.SAVINGS ? savings : checking).prefix;
+    return reserve(prefix, count).map(last -> LongStream.rangeClosed(last - count + 1, last)
+        .mapToObj(n -> format(prefix, n)).toList());
+  }
+
+  static String format(String prefix, long n) {
+    return String.format("%s-%010d", prefix, n);
+  }
+
+  private Mono<Long> reserveBlock(String prefix) {
+    return reserve(prefix, blockSize);
+  }
+
+  /** Reserva atómicamente el rango {@code [fin - size + 1, fin]}; devuelve su último valor. */
+  private Mono<Long> reserve(String prefix, int size) {
+    Query q = Query.query(where("_id").is("accountNumber:" + prefix));
+    Update u = new Update().inc("seq", (long) size);
+    Timer timer = registry.timer("accountms.account.number.blocks", "prefix", prefix);
+    return Mono.defer(() -> {
+      Timer.Sample sample = Timer.start(registry);
+      return mongo
+          .findAndModify(q, u, FindAndModifyOptions.options().upsert(true).returnNew(true),
+              Document.class, COLLECTION)
+          .map(doc -> ((Number) doc.get("seq")).longValue()).doOnNext(v -> sample.stop(timer));
+    });
+  }
+
+  /** Bloque en memoria de un prefijo; la recarga se comparte entre los que esperan. */
+  private final class Sequence {
+    private final String prefix;
+    private long next = 1;
+    private long end = 0;
+    private Mono<Void> refill;
+
+    Sequence(String prefix) {
+      this.prefix = prefix;
+    }
+
+    Mono<Long> next() {
+      return Mono.defer(() -> {
+        synchronized (this) {
+          if (next <= end)
+            return Mono.just(next++);
+          if (refill == null) {
+            // Se libera antes de que cache() avise a los que esperan: los que no alcancen del
+            // bloque nuevo deben ver una recarga nueva, no la ya terminada
+            refill = reserveBlock(prefix).doOnNext(this::install).doOnTerminate(this::clearRefill)
+                .doOnCancel(this::clearRefill).then().cache();
+          }
+          return refill.then(next());
+        }
+      });
+    }
+
+    private synchronized void install(long last) {
+      next = last - blockSize + 1;
+      end = last;
+    }
+
+    private synchronized void clearRefill() {
+      refill = null;
+    }
+  }
+}
@@ -0,0 +1,47 @@
+package org.taller01.accountms.service;
+
+import static org.springframework.http.HttpStatus.BAD_REQUEST;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * Parámetro {@code fields=} de las lecturas: se traduce a una proyección de Mongo para que solo
+ * viajen (driver y HTTP) los campos pedidos. El id siempre se incluye (cursor de paginación).
+ */
+final class AccountProjection {
+
+  private static final Set<String> ALLOWED =
+      Set.of("id", "accountNumber", "balance", "type", "clientId", "active");
+
+  private AccountProjection() {}
+
+  /** @return campos pedidos, o null si no se pidió proyección (documento completo) */
+  static Set<String> parse(String fields) {
+    if (fields == null || fields.isBlank())
+      return null;
+    Set<String> parsed = new LinkedHashSet<>();
+    for (String f : fields.split(",")) {
+      String name = f.trim();
+      if (name.isEmpty())
+        continue;
+      if (!ALLOWED.contains(name))
+        throw new ResponseStatusException(BAD_REQUEST, "Campo desconocido en 'fields': " + name
+            + ". Permitidos: " + String.join(",", ALLOWED.stream().sorted().toList()));
+      parsed.add(name);
+    }
+    return parsed;
+  }
+
+  static Query apply(Query q, Set<String> fields) {
+    if (fields == null)
+      return q;
+    fields.forEach(f -> q.fields().include(f));
+    // El saldo real de una cuenta repartida suma sus slots
+    if (fields.contains("balance"))
+      q.fields().include("balanceSlots");
+    return q;
+  }
+}
@@ -1,55 +1,176 @@
 package org.taller01.accountms.service;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.bson.types.Decimal128;
+import org.bson.types.ObjectId;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
-import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.transaction.NoTransactionException;
+import org.springframework.transaction.reactive.TransactionSynchronizationManager;
+import org.springframework.transaction.reactive.TransactionalOperator;
 import org.springframework.web.server.ResponseStatusException;
+import org.taller01.accountms.client.ClientValidationCache;
 import org.taller01.accountms.domain.Account;
 import org.taller01.accountms.domain.AccountType;
+import org.taller01.accountms.domain.MovementType;
 import org.taller01.accountms.dto.request.CreateAccountRequest;
+import org.taller01.accountms.dto.request.MovementCommand;
 import org.taller01.accountms.dto.request.UpdateAccountRequest;
+import org.taller01.accountms.dto.response.AccountPage;
+import org.taller01.accountms.dto.response.AccountResponse;
+import org.taller01.accountms.dto.response.BalanceResponse;
+import org.taller01.accountms.dto.response.TransferResponse;
 import org.taller01.accountms.exception.ResourceNotFoundException;
 import org.taller01.accountms.repository.AccountRepository;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import java.math.BigDecimal;
-import java.util.concurrent.ThreadLocalRandom;
+import java.util.List;
+import java.util.Set;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
 import static org.springframework.http.HttpStatus.*;
 
 @Service
 public class AccountService {
 
+  private static final int DEFAULT_PAGE_SIZE = 50;
+  private static final int MAX_PAGE_SIZE = 500;
+
+  private static final FindAndModifyOptions RETURN_NEW =
+      FindAndModifyOptions.options().returnNew(true);
 
   private final AccountRepository repo;
-  private final WebClient webClient;
+  private final ReactiveMongoTemplate mongo;
+  private final ClientValidationCache clients;
+  private final AccountNumberAllocator numbers;
+  private final AccountCache cache;
+  private final MovementCoalescer coalescer;
+  private final LedgerService ledger;
+  private final BalanceSlotService slots;
+  private final TransactionalOperator tx;
+  private final BalanceMigration migration;
+  private final int streamBatchSize;
+  private final Counter insufficientFunds;
 
-  public AccountService(AccountRepository repo, WebClient.Builder builder,
-      @Value("${clientms.base-url}") String baseUrl) {
+  public AccountService(AccountRepository repo, ReactiveMongoTemplate mongo,
+      ClientValidationCache clients, AccountNumberAllocator numbers, AccountCache cache,
+      MovementCoalescer coalescer, LedgerService ledger, BalanceSlotService slots,
+      TransactionalOperator tx, BalanceMigration migration, MeterRegistry registry,
+      @Value("${accountms.stream.batch-size:500}") int streamBatchSize) {
     this.repo = repo;
-    this.webClient = builder.baseUrl(baseUrl).build();
+    this.mongo = mongo;
+    this.clients = clients;
+    this.numbers = numbers;
+    this.cache = cache;
+    this.coalescer = coalescer;
+    this.ledger = ledger;
+    this.slots = slots;
+    this.tx = tx;
+    this.migration = migration;
+    this.streamBatchSize = streamBatchSize;
+    this.insufficientFunds = Counter.builder("accountms.withdrawals.rejected")
+        .description("Retiros rechazados").tag("reason", "insufficient_funds").register(registry);
+  }
+
+  /** Paginación por cursor: {@code _id > after} ordenado por {@code _id}, sin skip. */
+  public Mono<AccountPage> listAll(String after, Integer limit, String fields) {
+    return page(null, after, limit, fields);
+  }
+
+  public Mono<AccountPage> listByClientId(String clientId, String after, Integer limit,
+      String fields) {
+    return validarCliente(clientId).then(page(clientId, after, limit, fields));
   }
 
-  public Flux<Account> listAll() {
-    return repo.findAll();
+  /**
+   * Recorrido completo para streaming (NDJSON/SSE): sin límite de página, la demanda del cliente
+   * HTTP se propaga hasta el cursor de Mongo, que trae lotes de {@code streamBatchSize}.
+   */
+  public Flux<Account> streamAll(String after, String fields) {
+    return stream(null, after, fields);
   }
 
-  public Flux<Account> listByClientId(String clientId) {
-    return validarCliente(clientId).thenMany(repo.findByClientId(clientId));
+  public Flux<Account> streamByClientId(String clientId, String after, String fields) {
+    return validarCliente(clientId).thenMany(stream(clientId, after, fields));
   }
 
+  /**
+   * Read-through: la caché de cuentas evita ir a Mongo en las cuentas más leídas. Se cachea el
+   * saldo real (con pendientes del libro o sub-saldos).
+   */
   public Mono<Account> getById(String id) {
-    return repo.findById(id)
+    return cache.get(id, key -> repo.findById(key).flatMap(this::withTotals))
+        .switchIfEmpty(Mono.error(new ResourceNotFoundException("Cuenta no encontrada")));
+  }
+
+  /** Lectura con proyección opcional ({@code fields=id,balance}); sin fields es getById. */
+  public Mono<Account> getById(String id, String fields) {
+    return Mono.defer(() -> {
+      Set<String> projection = AccountProjection.parse(fields);
+      if (projection == null)
+        return getById(id);
+      Query q = AccountProjection.apply(Query.query(where("_id").is(id)), projection);
+      return mongo.findOne(q, Account.class).flatMap(this::withTotals)
+          .switchIfEmpty(Mono.error(new ResourceNotFoundException("Cuenta no encontrada")));
+    });
+  }
+
+  // ============================================================
+  // CONSULTA DE SALDO (la lectura más frecuente)
+  // ============================================================
+
+  /**
+   * Solo lee {@code balance} y {@code active} (más el número de slots, necesario para el saldo
+   * real) por {@code _id}. En modo libro el saldo exacto incluye los movimientos sin compactar.
+   */
+  public Mono<BalanceResponse> getBalance(String id) {
+    if (ledger.enabled())
+      return ledger.current(id).map(AccountService::balanceOf)
+          .switchIfEmpty(Mono.error(new ResourceNotFoundException("Cuenta no encontrada")));
+    Account cached = cache.getIfPresent(id);
+    if (cached != null)
+      return Mono.just(balanceOf(cached));
+    return mongo.findOne(balanceQuery(where("_id").is(id)), Account.class).flatMap(this::withTotals)
+        .map(AccountService::balanceOf)
         .switchIfEmpty(Mono.error(new ResourceNotFoundException("Cuenta no encontrada")));
   }
 
+  /** Variante por lote: una sola consulta {@code _id $in}; los ids inexistentes se omiten. */
+  public Flux<BalanceResponse> getBalances(List<String> ids) {
+    if (ids == null || ids.isEmpty())
+      return Flux.error(new ResponseStatusException(BAD_REQUEST, "Debe enviar al menos un id"));
+    if (ids.size() > MAX_PAGE_SIZE)
+      return Flux.error(new ResponseStatusException(BAD_REQUEST,
+          "Se admiten como máximo " + MAX_PAGE_SIZE + " ids por consulta"));
+    return mongo.find(balanceQuery(where("_id").in(ids)), Account.class).concatMap(this::withTotals)
+        .map(AccountService::balanceOf);
+  }
+
+  private static Query balanceQuery(Criteria criteria) {
+    Query q = Query.query(criteria);
+    q.fields().include("balance", "active", "balanceSlots");
+    return q;
+  }
+
+  private static BalanceResponse balanceOf(Account acc) {
+    return new BalanceResponse(acc.getId(), acc.getBalance(), acc.getActive());
+  }
+
   public Mono<Account> create(CreateAccountRequest req) {
     return validarCliente(req.clientId()).then(generarNumeroCuentaUnico(req.accountType()))
         .flatMap(num -> {
           var acc = Account.builder().clientId(req.clientId()).accountNumber(num)
               .balance(req.initialBalance() == null ? BigDecimal.ZERO : req.initialBalance())
               .active(true).type(req.accountType()).build();
-          return repo.save(acc);
+          return repo.save(acc).map(cache::put);
         });
   }
 
@@ -62,8 +183,7 @@ public class AccountService {
         return Mono.error(new ResponseStatusException(CONFLICT,
             Boolean.TRUE.equals(acc.getActive()) ? "La cuenta ya está activada"
                 : "La cuenta ya está desactivada"));
-      acc.setActive(req.active());
-      return repo.save(acc);
+      return setActive(acc, req.active());
     });
   }
 
@@ -75,73 +195,246 @@ public class AccountService {
         return Mono.error(new ResponseStatusException(CONFLICT,
             Boolean.TRUE.equals(acc.getActive()) ? "La cuenta ya está activada"
                 : "La cuenta ya está desactivada"));
-      acc.setActive(req.active());
-      return repo.save(acc);
+      return setActive(acc, req.active());
     });
   }
 
+  /**
+   * Solo cambia {@code active}: el saldo leído por getById es el real (con pendientes o sub-saldos)
+   * y guardar la cuenta entera lo escribiría en la instantánea.
+   */
+  private Mono<Account> setActive(Account acc, boolean active) {
+    acc.setActive(active);
+    return mongo.updateFirst(Query.query(where("_id").is(acc.getId())),
+        new Update().set("active", active), Account.class).thenReturn(acc).map(cache::put);
+  }
+
+  /**
+   * El saldo comprobado es el real (con pendientes del libro o sub-saldos) y se vuelve a comprobar
+   * al borrar, en el mismo paso, por si entra un movimiento entretanto.
+   */
   public Mono<Void> delete(String id) {
     return getById(id).flatMap(acc -> {
       if (acc.getBalance() != null && acc.getBalance().compareTo(BigDecimal.ZERO) != 0)
-        return Mono.error(new ResponseStatusException(CONFLICT,
-            "No se puede eliminar la cuenta: el saldo debe ser 0.00"));
-      return repo.delete(acc);
+        return nonZeroBalance();
+      if (ledger.enabled())
+        return ledger.deleteIfEmpty(id)
+            .flatMap(deleted -> deleted ? Mono.<Void>empty() : nonZeroBalance())
+            .doFinally(s -> cache.invalidate(id));
+      // Los slots se borran siempre: el reparto local puede no saber aún que la cuenta lo tiene
+      return slots.deleteIfEmpty(id)
+          .flatMap(deleted -> deleted ? Mono.<Void>empty() : nonZeroBalance())
+          .doFinally(s -> cache.invalidate(id));
     });
   }
 
-  private Mono<Void> validarCliente(String clientId) {
-    return webClient.get().uri("/clientes/{id}", clientId).exchangeToMono(resp -> {
-      if (resp.statusCode().is2xxSuccessful())
-        return Mono.empty();
-      if (resp.statusCode().value() == 404)
-        return Mono.error(new ResponseStatusException(BAD_REQUEST, "El cliente no existe"));
-      if (resp.statusCode().value() == 400)
-        return Mono.error(
-            new ResponseStatusException(BAD_REQUEST, "El identificador de cliente es inválido"));
-      if (resp.statusCode().is5xxServerError())
-        return Mono
-            .error(new ResponseStatusException(SERVICE_UNAVAILABLE, "ClientMS no disponible"));
-      return Mono.error(new ResponseStatusException(BAD_REQUEST, "No se pudo validar el cliente"));
+  /**
+   * Reparte (o deja de repartir, con {@code count = 1}) el saldo de una cuenta muy caliente en
+   * {@code count} sub-saldos. El saldo se consolida antes de cambiar el número de slots.
+   */
+  public Mono<Account> configureSlots(String id, int count) {
+    return slots.configure(id, count).flatMap(slots::withTotal)
+        .switchIfEmpty(Mono.error(new ResourceNotFoundException("Cuenta no encontrada")))
+        .doFinally(s -> cache.invalidate(id));
+  }
+
+  private static Mono<Void> nonZeroBalance() {
+    return Mono.error(new ResponseStatusException(CONFLICT,
+        "No se puede eliminar la cuenta: el saldo debe ser 0.00"));
+  }
+
+  /**
+   * Saldo real en lecturas: en modo libro suma los depósitos pendientes y en las cuentas repartidas
+   * los sub-saldos; el resto pasa tal cual.
+   */
+  private Mono<Account> withTotals(Account acc) {
+    if (acc.getBalance() == null)
+      return Mono.just(acc);
+    if (ledger.enabled())
+      return ledger.withPending(acc);
+    // El documento manda: el reparto en memoria de este nodo puede ir por detrás
+    if (acc.getBalanceSlots() == null || acc.getBalanceSlots() <= 1)
+      return Mono.just(acc);
+    return slots.withTotal(acc);
+  }
+
+  private Flux<Account> stream(String clientId, String after, String fields) {
+    return Flux.defer(() -> {
+      Criteria criteria = keyset(clientId, after);
+      Query q = AccountProjection.apply(Query.query(criteria), AccountProjection.parse(fields))
+          .with(Sort.by("_id")).cursorBatchSize(streamBatchSize);
+      return mongo.find(q, Account.class).limitRate(streamBatchSize).concatMap(this::withTotals);
     });
   }
 
-  private Mono<String> generarNumeroCuentaUnico(AccountType t) {
-    final String pref = (t == AccountType.SAVINGS) ? "SV" : "CH";
+  /** Criterio común de listados: cliente opcional y {@code _id > after}. */
+  private static Criteria keyset(String clientId, String after) {
+    Criteria criteria = clientId == null ? new Criteria() : where("clientId").is(clientId);
+    if (after != null) {
+      if (!ObjectId.isValid(after))
+        throw new ResponseStatusException(BAD_REQUEST, "Cursor 'after' inválido");
+      criteria.and("_id").gt(new ObjectId(after));
+    }
+    return criteria;
+  }
+
+  private Mono<AccountPage> page(String clientId, String after, Integer limit, String fields) {
     return Mono.defer(() -> {
-      String cand = String.format("%s-%06d", pref, ThreadLocalRandom.current().nextInt(1_000_000));
-      return repo.existsByAccountNumber(cand).flatMap(
-          exists -> exists ? Mono.error(new IllegalStateException("dup")) : Mono.just(cand));
-    }).retry(10).onErrorMap(
-        e -> new ResponseStatusException(CONFLICT, "No se pudo generar un número de cuenta único"));
+      int size = limit == null ? DEFAULT_PAGE_SIZE : limit;
+      if (size < 1 || size > MAX_PAGE_SIZE)
+        return Mono.error(new ResponseStatusException(BAD_REQUEST,
+            "El parámetro 'limit' debe estar entre 1 y " + MAX_PAGE_SIZE));
+      Criteria criteria = keyset(clientId, after);
+      // Se pide un elemento extra solo para saber si existe una página siguiente
+      Query q = AccountProjection.apply(Query.query(criteria), AccountProjection.parse(fields))
+          .with(Sort.by("_id")).limit(size + 1);
+      return mongo.find(q, Account.class).concatMap(this::withTotals).map(AccountResponse::from)
+          .collectList()
+          .map(rows -> rows.size() > size
+              ? new AccountPage(rows.subList(0, size), rows.get(size - 1).getId())
+              : new AccountPage(rows, null));
+    });
+  }
+
+  private Mono<Void> validarCliente(String clientId) {
+    return clients.validarCliente(clientId);
+  }
+
+  /** Sin consultas extra: el allocator entrega números de un bloque ya reservado. */
+  private Mono<String> generarNumeroCuentaUnico(AccountType t) {
+    return numbers.next(t);
   }
 
   // ============================================================
   // COMANDOS DE DOMINIO (usados por TransactionMS)
   // ============================================================
 
+  /**
+   * Abono atómico: un único findAndModify con $inc, sin leer la cuenta antes. Evita perder
+   * actualizaciones cuando TransactionMS mueve la misma cuenta en paralelo.
+   */
   public Mono<Account> deposit(String accountId, BigDecimal amount) {
     if (amount == null || amount.compareTo(BigDecimal.ZERO) <= 0) {
       return Mono.error(new ResponseStatusException(BAD_REQUEST, "El monto debe ser positivo"));
     }
-    return getById(accountId).flatMap(acc -> {
-      BigDecimal current = acc.getBalance() == null ? BigDecimal.ZERO : acc.getBalance();
-      acc.setBalance(current.add(amount));
-      return repo.save(acc);
-    });
+    if (ledger.enabled())
+      return ledger.deposit(accountId, amount).flatMap(this::outcome);
+    if (slots.isSharded(accountId))
+      return slots.deposit(accountId, amount).flatMap(this::outcome);
+    Query q = Query.query(where("_id").is(accountId));
+    Mono<Account> inc =
+        mongo.findAndModify(q, incBalance(amount), RETURN_NEW, Account.class).map(this::evict)
+            .switchIfEmpty(Mono.error(new ResourceNotFoundException("Cuenta no encontrada")));
+    // Saldo aún guardado como string: se convierte esa cuenta y se repite el $inc
+    Mono<Account> direct = inc.onErrorResume(BalanceMigration::isLegacyBalance,
+        e -> migration.migrate(accountId).then(inc));
+    return coalesced(new MovementCommand(accountId, MovementType.DEPOSIT, amount), direct);
   }
 
+  /**
+   * Cargo atómico: el filtro {@code balance >= amount} garantiza que el saldo nunca quede negativo.
+   * Si no hay match se distingue (solo en el camino de error) entre cuenta inexistente y saldo
+   * insuficiente.
+   */
   public Mono<Account> withdraw(String accountId, BigDecimal amount) {
     if (amount == null || amount.compareTo(BigDecimal.ZERO) <= 0) {
       return Mono.error(new ResponseStatusException(BAD_REQUEST, "El monto debe ser positivo"));
     }
-    return getById(accountId).flatMap(acc -> {
-      BigDecimal current = acc.getBalance() == null ? BigDecimal.ZERO : acc.getBalance();
-      if (current.compareTo(amount) < 0) {
-        return Mono.error(new ResponseStatusException(HttpStatus.CONFLICT, "Saldo insuficiente"));
+    if (ledger.enabled())
+      return ledger.withdraw(accountId, amount).flatMap(this::outcome);
+    if (slots.isSharded(accountId))
+      return slots.withdraw(accountId, amount).flatMap(this::outcome);
+    Query q = Query.query(where("_id").is(accountId).and("balance").gte(new Decimal128(amount)));
+    Mono<Account> dec = mongo
+        .findAndModify(q, incBalance(amount.negate()), RETURN_NEW, Account.class).map(this::evict);
+    Mono<Account> direct = dec.switchIfEmpty(Mono.defer(() -> rejectWithdrawal(accountId, dec)));
+    return coalesced(new MovementCommand(accountId, MovementType.WITHDRAW, amount), direct);
+  }
+
+  /**
+   * Transferencia en una sola transacción multi-documento: cargo y abono se confirman juntos o no
+   * se aplica ninguno (404/409 abortan la transacción). Reutiliza {@link #withdraw} y
+   * {@link #deposit}, que dentro de la transacción no se agrupan y siguen respetando el libro y los
+   * sub-saldos. Los conflictos transitorios repiten la transacción completa.
+   */
+  public Mono<TransferResponse> transfer(String fromId, String toId, BigDecimal amount) {
+    if (fromId == null || toId == null)
+      return Mono.error(
+          new ResponseStatusException(BAD_REQUEST, "Debe indicar cuenta de origen y de destino"));
+    if (fromId.equals(toId))
+      return Mono.error(new ResponseStatusException(BAD_REQUEST,
+          "La cuenta de origen y la de destino deben ser distintas"));
+    // Secuencial: en la sesión de una transacción no se admiten operaciones en paralelo
+    Mono<TransferResponse> unit =
+        Mono.defer(() -> withdraw(fromId, amount).flatMap(from -> deposit(toId, amount).map(
+            to -> new TransferResponse(AccountResponse.from(from), AccountResponse.from(to)))));
+    return tx.transactional(unit).retryWhen(MongoRetries.transientTransactions(3))
+        // Una lectura durante la transacción pudo cachear el saldo previo: se invalida al confirmar
+        // o abortar
+        .doFinally(s -> {
+          cache.invalidate(fromId);
+          cache.invalidate(toId);
+        });
+  }
+
+  /**
+   * Con el agrupamiento activo el movimiento pasa por {@link MovementCoalescer}, salvo dentro de
+   * una transacción (p. ej. con Idempotency-Key): el grupo se escribe fuera de ella y rompería la
+   * atomicidad.
+   */
+  private Mono<Account> coalesced(MovementCommand command, Mono<Account> direct) {
+    if (!coalescer.enabled())
+      return direct;
+    return TransactionSynchronizationManager.forCurrentTransaction()
+        .map(TransactionSynchronizationManager::isActualTransactionActive)
+        .onErrorReturn(NoTransactionException.class, false)
+        .flatMap(inTx -> inTx ? direct : coalescer.submit(command).flatMap(this::outcome));
+  }
+
+  /**
+   * Los movimientos invalidan en vez de cachear su resultado: dos movimientos concurrentes pueden
+   * terminar en cualquier orden y el último {@code put} dejaría un saldo viejo. La siguiente
+   * lectura recarga desde Mongo.
+   */
+  private Account evict(Account acc) {
+    cache.invalidate(acc.getId());
+    return acc;
+  }
+
+  private Mono<Account> outcome(MovementOutcome o) {
+    return switch (o.status()) {
+      case APPLIED -> Mono.just(evict(o.account()));
+      case INSUFFICIENT_FUNDS -> {
+        insufficientFunds.increment();
+        yield Mono.error(new ResponseStatusException(HttpStatus.CONFLICT, "Saldo insuficiente"));
       }
-      acc.setBalance(current.subtract(amount));
-      return repo.save(acc);
+      case ACCOUNT_NOT_FOUND -> Mono.error(new ResourceNotFoundException("Cuenta no encontrada"));
+      case INVALID -> Mono.error(new ResponseStatusException(BAD_REQUEST, "Movimiento inválido"));
+    };
+  }
+
+  /**
+   * Camino de error del retiro: distingue cuenta inexistente de saldo insuficiente. Un saldo aún
+   * guardado como string no hace match con el filtro numérico: se convierte y se reintenta.
+   */
+  private Mono<Account> rejectWithdrawal(String accountId, Mono<Account> retry) {
+    return migration.migrate(accountId)
+        .flatMap(converted -> converted
+            ? retry.switchIfEmpty(Mono.defer(() -> rejectMissingOrInsufficient(accountId)))
+            : rejectMissingOrInsufficient(accountId));
+  }
+
+  private Mono<Account> rejectMissingOrInsufficient(String accountId) {
+    return repo.existsById(accountId).flatMap(exists -> {
+      if (!exists)
+        return Mono.error(new ResourceNotFoundException("Cuenta no encontrada"));
+      insufficientFunds.increment();
+      return Mono.error(new ResponseStatusException(HttpStatus.CONFLICT, "Saldo insuficiente"));
     });
   }
 
+  private static Update incBalance(BigDecimal delta) {
+    return new Update().inc("balance", new Decimal128(delta));
+  }
+
 }
@@ -0,0 +1,115 @@
+package org.taller01.accountms.service;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+import com.mongodb.MongoException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.AggregationUpdate;
+import org.springframework.data.mongodb.core.aggregation.ConvertOperators;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.schema.JsonSchemaObject.Type;
+import org.springframework.stereotype.Service;
+import org.taller01.accountms.domain.Account;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+
+/**
+ * Migración en línea de {@code accounts.balance} guardado como string (antes de Decimal128) a
+ * Decimal128. Al arrancar recorre en segundo plano, por lotes de {@code _id}, las cuentas cuyo
+ * saldo sigue siendo string y lo convierte con un update de pipeline ({@code $toDecimal}) filtrado
+ * por {@code $type: string}: es idempotente, no pisa escrituras concurrentes y varias instancias
+ * pueden correrlo a la vez.
+ *
+ * <p>
+ * Mientras tanto, el camino directo de depósito/retiro convierte bajo demanda la cuenta que toca
+ * ({@link #migrate(String)}) si el $inc falla o el filtro de saldo no hace match por el tipo.
+ */
+@Slf4j
+@Service
+public class BalanceMigration implements ApplicationRunner, DisposableBean {
+
+  private static final String COLLECTION = "accounts";
+  /** Código de Mongo para "Cannot apply $inc to a value of non-numeric type". */
+  private static final int TYPE_MISMATCH = 14;
+
+  private static final AggregationUpdate TO_DECIMAL = AggregationUpdate.update().set("balance")
+      .toValue(ConvertOperators.valueOf("balance").convertToDecimal());
+
+  private final ReactiveMongoTemplate mongo;
+  private final boolean enabled;
+  private final int batchSize;
+  private final Counter migrated;
+  private Disposable running;
+
+  public BalanceMigration(ReactiveMongoTemplate mongo, MeterRegistry registry,
+      @Value("${accountms.migration.balance.enabled:true}") boolean enabled,
+      @Value("${accountms.migration.balance.batch-size:500}") int batchSize) {
+    this.mongo = mongo;
+    this.enabled = enabled;
+    this.batchSize = batchSize;
+    this.migrated = Counter.builder("accountms.migration.balances")
+        .description("Saldos convertidos de string a Decimal128").register(registry);
+  }
+
+  @Override
+  public void run(ApplicationArguments args) {
+    if (!enabled)
+      return;
+    running = migrateAll().subscribe(
+        n -> log.info("Migración de saldos a Decimal128 terminada: {} cuentas", n),
+        e -> log.warn("La migración de saldos a Decimal128 no terminó", e));
+  }
+
+  @Override
+  public void destroy() {
+    if (running != null)
+      running.dispose();
+  }
+
+  /** Convierte lote a lote hasta que no quede ningún saldo string; devuelve cuántos convirtió. */
+  Mono<Long> migrateAll() {
+    return migrateBatch().expand(n -> n > 0 ? migrateBatch() : Mono.empty()).reduce(0L, Long::sum);
+  }
+
+  private Mono<Long> migrateBatch() {
+    Query pending = Query.query(legacy(new Criteria())).limit(batchSize);
+    pending.fields().include("_id");
+    return mongo.find(pending, Document.class, COLLECTION).map(d -> d.get("_id")).collectList()
+        .flatMap(ids -> ids.isEmpty() ? Mono.just(0L)
+            : mongo
+                .updateMulti(Query.query(legacy(where("_id").in(ids))), TO_DECIMAL, Account.class)
+                .map(r -> r.getModifiedCount()))
+        .doOnNext(migrated::increment);
+  }
+
+  /** Convierte una cuenta; true si su saldo todavía era string. */
+  public Mono<Boolean> migrate(String accountId) {
+    return mongo
+        .updateFirst(Query.query(legacy(where("_id").is(accountId))), TO_DECIMAL, Account.class)
+        .map(r -> r.getModifiedCount() > 0).doOnNext(converted -> {
+          if (converted)
+            migrated.increment();
+        });
+  }
+
+  /** El $inc falló porque {@code balance} no es numérico (saldo aún sin migrar). */
+  public static boolean isLegacyBalance(Throwable e) {
+    for (Throwable t = e; t != null; t = t.getCause())
+      if (t instanceof MongoException me && me.getCode() == TYPE_MISMATCH)
+        return true;
+    return false;
+  }
+
+  private static Criteria legacy(Criteria criteria) {
+    return criteria.and("balance").type(Type.STRING);
+  }
+}
@@ -0,0 +1,273 @@
+package org.taller01.accountms.service;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.http.HttpStatus.BAD_REQUEST;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.types.Decimal128;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import org.springframework.web.server.ResponseStatusException;
+import org.taller01.accountms.domain.Account;
+import org.taller01.accountms.domain.BalanceSlot;
+import org.taller01.accountms.dto.response.MovementResult.Status;
+import org.taller01.accountms.service.MongoRetries.StaleBalanceException;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Cuentas repartidas ({@code balanceSlots = N > 1}): el saldo se divide en N contadores para que
+ * una cuenta muy caliente no dependa del ritmo de escritura de un solo documento. El slot 0 es el
+ * propio {@code accounts.balance} y los slots 1..N-1 viven en {@code balance_slots}; así activar el
+ * reparto no requiere migrar saldo, y quien lea solo {@code accounts.balance} ve una cota inferior
+ * (ningún slot queda negativo).
+ *
+ * <p>
+ * Los documentos de los slots 1..N-1 los crea {@link #configure} junto con {@code balanceSlots}, en
+ * la misma transacción, y los movimientos solo los actualizan (nunca upsert): un slot existe si y
+ * solo si la cuenta existe y tiene ese número de slots. Reconfigurar o borrar la cuenta elimina los
+ * documentos dentro de una transacción, así que un depósito concurrente sobre un slot choca con
+ * ella y se reintenta.
+ *
+ * <p>
+ * Depósito: $inc en un slot al azar; si el slot ya no existe (otro nodo cambió el reparto o borró
+ * la cuenta) se deposita en el slot 0. Retiro: se prueban los slots (desde uno al azar) con el
+ * filtro {@code balance >= amount}; si ninguno alcanza, se consolida todo en el slot 0 dentro de
+ * una transacción y se reintenta ahí. El saldo que se devuelve es la suma de los slots leída tras
+ * escribir.
+ *
+ * <p>
+ * El conjunto de cuentas repartidas se mantiene en memoria y se recarga cada
+ * {@code accountms.slots.refresh-interval}, para no leer la cuenta antes de cada movimiento. Solo
+ * decide dónde escribir: las lecturas usan el {@code balanceSlots} del propio documento.
+ */
+@Slf4j
+@Service
+public class BalanceSlotService implements ApplicationRunner, DisposableBean {
+
+  static final int MAX_SLOTS = 64;
+
+  private static final FindAndModifyOptions RETURN_NEW =
+      FindAndModifyOptions.options().returnNew(true);
+
+  private final ReactiveMongoTemplate mongo;
+  private final TransactionalOperator tx;
+  private final Duration refreshInterval;
+  private final Map<String, Integer> sharded = new ConcurrentHashMap<>();
+  private Disposable refresh;
+
+  public BalanceSlotService(ReactiveMongoTemplate mongo, TransactionalOperator tx,
+      @Value("${accountms.slots.refresh-interval:10s}") Duration refreshInterval) {
+    this.mongo = mongo;
+    this.tx = tx;
+    this.refreshInterval = refreshInterval;
+  }
+
+  @Override
+  public void run(ApplicationArguments args) {
+    refresh = Flux.interval(Duration.ZERO, refreshInterval).onBackpressureDrop()
+        .concatMap(tick -> reload().onErrorResume(e -> {
+          log.warn("No se pudo recargar las cuentas repartidas", e);
+          return Mono.empty();
+        }), 0).subscribe();
+  }
+
+  @Override
+  public void destroy() {
+    if (refresh != null)
+      refresh.dispose();
+  }
+
+  Mono<Void> reload() {
+    Query q = Query.query(where("balanceSlots").gt(1));
+    q.fields().include("balanceSlots");
+    return mongo.find(q, Account.class).collectMap(Account::getId, Account::getBalanceSlots)
+        .doOnNext(loaded -> {
+          sharded.keySet().retainAll(loaded.keySet());
+          sharded.putAll(loaded);
+        }).then();
+  }
+
+  public boolean isSharded(String accountId) {
+    return sharded.containsKey(accountId);
+  }
+
+  /**
+   * Cambia el número de slots: en una transacción consolida todo el saldo en el slot 0, borra los
+   * documentos de slot y crea vacíos los 1..N-1 del nuevo reparto. Vacío si la cuenta no existe.
+   */
+  public Mono<Account> configure(String accountId, int slots) {
+    if (slots < 1 || slots > MAX_SLOTS)
+      return Mono.error(new ResponseStatusException(BAD_REQUEST,
+          "El número de slots debe estar entre 1 y " + MAX_SLOTS));
+    Mono<Account> unit = slots(accountId).collectList().flatMap(current -> {
+      Update u =
+          slots == 1 ? new Update().unset("balanceSlots") : new Update().set("balanceSlots", slots);
+      u.inc("balance", new Decimal128(sum(current)));
+      return mongo.findAndModify(byId(accountId), u, RETURN_NEW, Account.class)
+          .flatMap(acc -> mongo.remove(slotsOf(accountId), BalanceSlot.class)
+              .thenMany(Flux.range(1, slots - 1).map(i -> emptySlot(accountId, i)).collectList()
+                  .filter(fresh -> !fresh.isEmpty()).flatMapMany(mongo::insertAll))
+              .then(Mono.just(acc)));
+    });
+    return tx.transactional(unit).retryWhen(MongoRetries.transientTransactions(3)).doOnNext(acc -> {
+      if (slots == 1)
+        sharded.remove(accountId);
+      else
+        sharded.put(accountId, slots);
+    });
+  }
+
+  public Mono<MovementOutcome> deposit(String accountId, BigDecimal amount) {
+    int slot = ThreadLocalRandom.current().nextInt(sharded.getOrDefault(accountId, 1));
+    Update inc = new Update().inc("balance", new Decimal128(amount));
+    Mono<Account> toAccount =
+        Mono.defer(() -> mongo.findAndModify(byId(accountId), inc, RETURN_NEW, Account.class));
+    Mono<?> write = slot == 0 ? toAccount
+        : mongo.findAndModify(byId(slotId(accountId, slot)), inc, RETURN_NEW, BalanceSlot.class)
+            .cast(Object.class).switchIfEmpty(Mono.defer(() -> {
+              // El reparto local está desfasado: la recarga periódica lo corrige
+              sharded.remove(accountId);
+              return toAccount;
+            }));
+    return write.flatMap(w -> applied(accountId))
+        .defaultIfEmpty(new MovementOutcome(Status.ACCOUNT_NOT_FOUND, null));
+  }
+
+  public Mono<MovementOutcome> withdraw(String accountId, BigDecimal amount) {
+    int n = sharded.getOrDefault(accountId, 1);
+    int start = ThreadLocalRandom.current().nextInt(n);
+    return Flux.range(0, n).concatMap(i -> take(accountId, (start + i) % n, amount)).next()
+        .flatMap(taken -> applied(accountId))
+        .switchIfEmpty(Mono.defer(() -> consolidateAndTake(accountId, amount)));
+  }
+
+  /** Ningún slot alcanzaba por sí solo: se juntan y se retira del slot 0. */
+  private Mono<MovementOutcome> consolidateAndTake(String accountId, BigDecimal amount) {
+    return Mono.defer(() -> consolidate(accountId).flatMap(total -> {
+      if (total.compareTo(amount) < 0)
+        return Mono.just(new MovementOutcome(Status.INSUFFICIENT_FUNDS, null));
+      // Entre consolidar y retirar otro retiro pudo llevarse el saldo: se repite
+      return take(accountId, 0, amount).flatMap(taken -> applied(accountId)).switchIfEmpty(
+          Mono.error(new StaleBalanceException("Saldo repartido modificado al consolidar")));
+    })).retryWhen(MongoRetries.transientTransactions(3))
+        .defaultIfEmpty(new MovementOutcome(Status.ACCOUNT_NOT_FOUND, null));
+  }
+
+  /** Retiro condicionado sobre un slot; vacío si ese slot no alcanza. */
+  private Mono<Object> take(String accountId, int slot, BigDecimal amount) {
+    Update dec = new Update().inc("balance", new Decimal128(amount.negate()));
+    if (slot == 0)
+      return mongo.findAndModify(byId(accountId).addCriteria(covers(amount)), dec, RETURN_NEW,
+          Account.class).cast(Object.class);
+    return mongo.findAndModify(byId(slotId(accountId, slot)).addCriteria(covers(amount)), dec,
+        RETURN_NEW, BalanceSlot.class).cast(Object.class);
+  }
+
+  /**
+   * Mueve los slots 1..N-1 al slot 0 en una transacción; un depósito concurrente sobre un slot la
+   * aborta y se reintenta. Devuelve el saldo total (vacío si la cuenta no existe).
+   */
+  Mono<BigDecimal> consolidate(String accountId) {
+    Mono<BigDecimal> unit = slots(accountId).collectList().flatMap(slots -> {
+      BigDecimal moved = sum(slots);
+      Mono<Account> account = mongo.findAndModify(byId(accountId),
+          new Update().inc("balance", new Decimal128(moved)), RETURN_NEW, Account.class);
+      return Flux.fromIterable(slots).filter(s -> s.getBalance().signum() != 0)
+          .concatMap(s -> mongo.updateFirst(byId(s.getId()),
+              new Update().inc("balance", new Decimal128(s.getBalance().negate())),
+              BalanceSlot.class))
+          .then(account).map(acc -> zeroIfNull(acc.getBalance()));
+    });
+    return tx.transactional(unit).retryWhen(MongoRetries.transientTransactions(3));
+  }
+
+  /** Cuenta con el saldo total (slot 0 + slots); {@code account} debe traer su slot 0. */
+  public Mono<Account> withTotal(Account account) {
+    return slots(account.getId()).collectList().map(slots -> account.toBuilder()
+        .balance(zeroIfNull(account.getBalance()).add(sum(slots))).build());
+  }
+
+  /**
+   * Borra la cuenta y sus slots si el saldo total es cero, tenga o no slots según el reparto local;
+   * {@code false} si queda saldo. Sin reparto en el documento no hay slots y basta un borrado
+   * condicionado a saldo cero, sin transacción. Si no, cuenta y slots se borran en una transacción
+   * con la que choca cualquier movimiento concurrente, que se reintenta con el saldo nuevo.
+   */
+  public Mono<Boolean> deleteIfEmpty(String accountId) {
+    Query unsharded = byId(accountId).addCriteria(where("balanceSlots").not().gt(1))
+        .addCriteria(where("balance").in(new Decimal128(BigDecimal.ZERO), null));
+    return mongo.remove(unsharded, Account.class)
+        .flatMap(r -> r.getDeletedCount() > 0 ? Mono.just(true) : deleteWithSlots(accountId))
+        .doOnNext(deleted -> {
+          if (deleted)
+            sharded.remove(accountId);
+        });
+  }
+
+  private Mono<Boolean> deleteWithSlots(String accountId) {
+    Mono<Boolean> unit =
+        mongo.findById(accountId, Account.class).flatMap(this::withTotal).flatMap(acc -> {
+          if (zeroIfNull(acc.getBalance()).signum() != 0)
+            return Mono.just(false);
+          return mongo.remove(slotsOf(accountId), BalanceSlot.class)
+              .then(mongo.remove(byId(accountId), Account.class)).thenReturn(true);
+        }).defaultIfEmpty(true);
+    return tx.transactional(unit).retryWhen(MongoRetries.transientTransactions(3));
+  }
+
+  private Mono<MovementOutcome> applied(String accountId) {
+    return mongo.findById(accountId, Account.class).flatMap(this::withTotal)
+        .map(acc -> new MovementOutcome(Status.APPLIED, acc));
+  }
+
+  private Flux<BalanceSlot> slots(String accountId) {
+    return mongo.find(slotsOf(accountId), BalanceSlot.class);
+  }
+
+  private static Query byId(String id) {
+    return Query.query(where("_id").is(id));
+  }
+
+  private static Query slotsOf(String accountId) {
+    return Query.query(where("accountId").is(accountId));
+  }
+
+  private static Criteria covers(BigDecimal amount) {
+    return where("balance").gte(new Decimal128(amount));
+  }
+
+  private static BalanceSlot emptySlot(String accountId, int slot) {
+    return BalanceSlot.builder().id(slotId(accountId, slot)).accountId(accountId).slot(slot)
+        .balance(BigDecimal.ZERO).build();
+  }
+
+  private static BigDecimal sum(List<BalanceSlot> slots) {
+    return slots.stream().map(s -> zeroIfNull(s.getBalance())).reduce(BigDecimal.ZERO,
+        BigDecimal::add);
+  }
+
+  static String slotId(String accountId, int slot) {
+    return accountId + ":" + slot;
+  }
+
+  private static BigDecimal zeroIfNull(BigDecimal v) {
+    return v == null ? BigDecimal.ZERO : v;
+  }
+}
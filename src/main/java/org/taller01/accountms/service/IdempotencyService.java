@@ -0,0 +1,93 @@
+package org.taller01.accountms.service;
+
+import static org.springframework.http.HttpStatus.BAD_REQUEST;
+import static org.springframework.http.HttpStatus.UNPROCESSABLE_ENTITY;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.function.Supplier;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import org.springframework.web.server.ResponseStatusException;
+import org.taller01.accountms.domain.Account;
+import org.taller01.accountms.domain.IdempotencyRecord;
+import org.taller01.accountms.domain.MovementType;
+import reactor.core.publisher.Mono;
+
+/**
+ * Depósitos y retiros internos con {@code Idempotency-Key}: TransactionMS puede reintentar (o
+ * duplicar) una llamada sin aplicar el movimiento dos veces.
+ *
+ * <p>
+ * El cambio de saldo y el registro de la clave se escriben en una sola transacción. Si otra llamada
+ * con la misma clave ya confirmó, el insert falla por clave duplicada, la transacción se aborta (el
+ * $inc se deshace) y se devuelve la respuesta guardada. Los rechazos (404, 409) no se guardan: un
+ * reintento vuelve a evaluarse.
+ */
+@Service
+public class IdempotencyService {
+
+  static final int MAX_KEY_LENGTH = 128;
+
+  private final ReactiveMongoTemplate mongo;
+  private final TransactionalOperator tx;
+  private final AccountCache cache;
+  private final Counter replays;
+
+  public IdempotencyService(ReactiveMongoTemplate mongo, TransactionalOperator tx,
+      AccountCache cache, MeterRegistry registry) {
+    this.mongo = mongo;
+    this.tx = tx;
+    this.cache = cache;
+    this.replays = registry.counter("accountms.idempotency.replays");
+  }
+
+  /** Sin clave ejecuta {@code command} tal cual, como antes. */
+  public Mono<Account> execute(String key, MovementType type, String accountId, BigDecimal amount,
+      Supplier<Mono<Account>> command) {
+    if (key == null)
+      return command.get();
+    if (key.isBlank() || key.length() > MAX_KEY_LENGTH)
+      return Mono.error(new ResponseStatusException(BAD_REQUEST,
+          "Idempotency-Key debe tener entre 1 y " + MAX_KEY_LENGTH + " caracteres"));
+
+    // Camino rápido para reintentos: la clave ya confirmada se responde sin abrir transacción
+    return findRecord(key).map(r -> replay(r, type, accountId, amount))
+        .switchIfEmpty(Mono.defer(() -> apply(key, type, accountId, amount, command)));
+  }
+
+  private Mono<Account> apply(String key, MovementType type, String accountId, BigDecimal amount,
+      Supplier<Mono<Account>> command) {
+    Mono<Account> unit =
+        Mono.defer(command)
+            .flatMap(
+                acc -> mongo
+                    .insert(IdempotencyRecord.builder().key(key).type(type).accountId(accountId)
+                        .amount(amount).result(acc).createdAt(Instant.now()).build())
+                    .thenReturn(acc));
+    return tx.transactional(unit).retryWhen(MongoRetries.transientTransactions(3))
+        // El comando ya puso en caché el saldo no confirmado
+        .doOnError(e -> cache.invalidate(accountId))
+        .onErrorResume(DuplicateKeyException.class, e -> findRecord(key)
+            .map(r -> replay(r, type, accountId, amount)).switchIfEmpty(Mono.error(e)));
+  }
+
+  private Mono<IdempotencyRecord> findRecord(String key) {
+    return mongo.findById(key, IdempotencyRecord.class);
+  }
+
+  /** La misma clave con otro comando es un error del llamador, no un reintento. */
+  private Account replay(IdempotencyRecord r, MovementType type, String accountId,
+      BigDecimal amount) {
+    if (r.getType() != type || !r.getAccountId().equals(accountId)
+        || r.getAmount().compareTo(amount) != 0)
+      throw new ResponseStatusException(UNPROCESSABLE_ENTITY,
+          "La Idempotency-Key ya se usó con otro movimiento");
+    replays.increment();
+    return r.getResult();
+  }
+}
@@ -0,0 +1,65 @@
+package org.taller01.accountms.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.Duration;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Tarea de fondo del modo libro: cada {@code accountms.ledger.compaction-interval} pliega los
+ * movimientos pendientes de cada cuenta en su instantánea. Mantiene acotado el retraso de las
+ * lecturas directas de {@code accounts.balance} y el trabajo de cada compactación.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "accountms.ledger.enabled", havingValue = "true")
+public class LedgerCompactor implements ApplicationRunner, DisposableBean {
+
+  private final LedgerService ledger;
+  private final Duration interval;
+  private final int concurrency;
+  private final Counter compacted;
+  private Disposable task;
+
+  public LedgerCompactor(LedgerService ledger, MeterRegistry registry,
+      @Value("${accountms.ledger.compaction-interval:1s}") Duration interval,
+      @Value("${accountms.ledger.compaction-concurrency:4}") int concurrency) {
+    this.ledger = ledger;
+    this.interval = interval;
+    this.concurrency = concurrency;
+    this.compacted = registry.counter("accountms.ledger.compacted");
+  }
+
+  @Override
+  public void run(ApplicationArguments args) {
+    // Una pasada a la vez: si una tarda más que el intervalo, los ticks intermedios se descartan
+    task =
+        Flux.interval(interval).onBackpressureDrop().concatMap(tick -> compactAll(), 0).subscribe();
+  }
+
+  Mono<Void> compactAll() {
+    return ledger.accountsWithPending()
+        .flatMap(id -> ledger.compact(id).doOnNext(compacted::increment).onErrorResume(e -> {
+          log.warn("No se pudo compactar el libro de la cuenta {}", id, e);
+          return Mono.empty();
+        }), concurrency).onErrorResume(e -> {
+          log.warn("Falló la pasada de compactación del libro", e);
+          return Mono.empty();
+        }).then();
+  }
+
+  @Override
+  public void destroy() {
+    if (task != null)
+      task.dispose();
+  }
+}
@@ -0,0 +1,200 @@
+package org.taller01.accountms.service;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.List;
+import org.bson.types.Decimal128;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import org.taller01.accountms.domain.Account;
+import org.taller01.accountms.domain.Movement;
+import org.taller01.accountms.domain.MovementType;
+import org.taller01.accountms.dto.response.MovementResult.Status;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Modo libro de movimientos ({@code accountms.ledger.enabled=true}): cada depósito/retiro se
+ * inserta en {@code movements} y el saldo es la instantánea guardada en {@code accounts.balance}
+ * más los movimientos aún no compactados. {@link LedgerCompactor} pliega periódicamente los
+ * pendientes en la instantánea.
+ *
+ * <p>
+ * Los depósitos solo insertan su movimiento: no escriben el documento de la cuenta ni abren una
+ * transacción de escritura, así que depósitos concurrentes sobre la misma cuenta no chocan. Los
+ * retiros necesitan serializarse para no dejar saldo negativo: se insertan ya compactados y
+ * descuentan de la instantánea en la misma transacción. Por eso los pendientes son siempre
+ * depósitos y {@code accounts.balance} nunca supera el saldo real.
+ *
+ * <p>
+ * El saldo real se lee en una transacción de solo lectura (instantánea y pendientes del mismo
+ * momento, aunque se compacte en medio). El recorrido de pendientes lo acota la compactación:
+ * además de la periódica, el depósito que ve más de {@code accountms.ledger.max-pending} pendientes
+ * compacta la cuenta en el acto.
+ */
+@Service
+public class LedgerService {
+
+  private static final FindAndModifyOptions RETURN_NEW =
+      FindAndModifyOptions.options().returnNew(true);
+
+  private final ReactiveMongoTemplate mongo;
+  private final TransactionalOperator tx;
+  private final boolean enabled;
+  private final int maxPending;
+
+  public LedgerService(ReactiveMongoTemplate mongo, TransactionalOperator tx,
+      @Value("${accountms.ledger.enabled:false}") boolean enabled,
+      @Value("${accountms.ledger.max-pending:1000}") int maxPending) {
+    this.mongo = mongo;
+    this.tx = tx;
+    this.enabled = enabled;
+    this.maxPending = maxPending;
+  }
+
+  public boolean enabled() {
+    return enabled;
+  }
+
+  public Mono<MovementOutcome> deposit(String accountId, BigDecimal amount) {
+    return mongo.insert(movement(accountId, MovementType.DEPOSIT, amount, false))
+        .flatMap(saved -> snapshot(accountId)
+            .flatMap(s -> compactIfBacklogged(accountId, s.pending())
+                .thenReturn(new MovementOutcome(Status.APPLIED, s.account())))
+            // La cuenta no existe (o se borró en medio): se retira el movimiento recién insertado
+            .switchIfEmpty(Mono.defer(() -> mongo.remove(saved)
+                .thenReturn(new MovementOutcome(Status.ACCOUNT_NOT_FOUND, null)))));
+  }
+
+  public Mono<MovementOutcome> withdraw(String accountId, BigDecimal amount) {
+    Mono<MovementOutcome> unit = read(accountId).flatMap(s -> {
+      if (s.account().getBalance().compareTo(amount) < 0)
+        return Mono.just(new MovementOutcome(Status.INSUFFICIENT_FUNDS, null));
+      // Escribir la cuenta hace que dos retiros concurrentes choquen y uno se reintente
+      return mongo.insert(movement(accountId, MovementType.WITHDRAW, amount, true))
+          .then(mongo.findAndModify(byId(accountId),
+              new Update().inc("balance", new Decimal128(amount.negate())), RETURN_NEW,
+              Account.class))
+          .map(updated -> new MovementOutcome(Status.APPLIED,
+              updated.toBuilder().balance(s.account().getBalance().subtract(amount)).build()));
+    }).defaultIfEmpty(new MovementOutcome(Status.ACCOUNT_NOT_FOUND, null));
+    return tx.transactional(unit).retryWhen(MongoRetries.transientTransactions(5));
+  }
+
+  /** Saldo real (instantánea + pendientes); vacío si la cuenta no existe. */
+  public Mono<Account> current(String accountId) {
+    return snapshot(accountId).map(Snapshot::account);
+  }
+
+  /**
+   * La cuenta leída con el saldo real en {@code balance}. Una proyección sin saldo pasa tal cual.
+   */
+  public Mono<Account> withPending(Account acc) {
+    if (acc.getBalance() == null)
+      return Mono.just(acc);
+    return current(acc.getId()).map(real -> acc.toBuilder().balance(real.getBalance()).build())
+        .defaultIfEmpty(acc);
+  }
+
+  /**
+   * Borra la cuenta solo si su saldo real es cero. Sin transacción: tras el borrado condicional se
+   * vuelve a mirar si entró un depósito entre la comprobación y el borrado y, si lo hay, se
+   * restaura el documento (ese depósito no encuentra la cuenta y retira su movimiento, o la
+   * encuentra ya restaurada). Devuelve si se borró.
+   */
+  public Mono<Boolean> deleteIfEmpty(String accountId) {
+    return current(accountId).flatMap(acc -> {
+      if (acc.getBalance().signum() != 0)
+        return Mono.just(false);
+      Query empty = Query.query(
+          where("_id").is(accountId).and("balance").in(new Decimal128(BigDecimal.ZERO), null));
+      return mongo.findAndRemove(empty, Account.class)
+          .flatMap(removed -> mongo.exists(pendingQuery(accountId), Movement.class)
+              .flatMap(raced -> raced ? mongo.insert(removed).thenReturn(false) : Mono.just(true)))
+          .defaultIfEmpty(false);
+    }).defaultIfEmpty(true);
+  }
+
+  /**
+   * Pliega los movimientos pendientes de la cuenta en su instantánea. Devuelve cuántos compactó; si
+   * la cuenta ya no existe no compacta nada.
+   */
+  public Mono<Integer> compact(String accountId) {
+    Mono<Integer> unit =
+        mongo.find(pendingQuery(accountId), Movement.class).collectList().flatMap(movements -> {
+          if (movements.isEmpty())
+            return Mono.just(0);
+          BigDecimal sum = sum(movements);
+          List<String> ids = movements.stream().map(Movement::getId).toList();
+          return mongo
+              .updateFirst(byId(accountId), new Update().inc("balance", new Decimal128(sum)),
+                  Account.class)
+              .flatMap(r -> r.getMatchedCount() == 0 ? Mono.just(0)
+                  : mongo
+                      .updateMulti(Query.query(where("_id").in(ids)),
+                          new Update().set("compacted", true), Movement.class)
+                      .thenReturn(movements.size()));
+        });
+    return tx.transactional(unit).retryWhen(MongoRetries.transientTransactions(3));
+  }
+
+  /** Cuentas con movimientos pendientes de compactar. */
+  public Flux<String> accountsWithPending() {
+    return mongo.findDistinct(Query.query(where("compacted").is(false)), "accountId",
+        Movement.class, String.class);
+  }
+
+  /** Instantánea + pendientes en una transacción de solo lectura. */
+  private Mono<Snapshot> snapshot(String accountId) {
+    return tx.transactional(read(accountId)).retryWhen(MongoRetries.transientTransactions(3));
+  }
+
+  private Mono<Snapshot> read(String accountId) {
+    return mongo.findById(accountId, Account.class)
+        .flatMap(acc -> mongo.find(pendingQuery(accountId), Movement.class).collectList()
+            .map(pending -> new Snapshot(
+                acc.toBuilder().balance(zeroIfNull(acc.getBalance()).add(sum(pending))).build(),
+                pending.size())));
+  }
+
+  /** Compacta en el acto si los pendientes pasan del máximo; si falla, queda para el periódico. */
+  private Mono<Integer> compactIfBacklogged(String accountId, int pending) {
+    if (pending <= maxPending)
+      return Mono.just(0);
+    return compact(accountId).onErrorReturn(0);
+  }
+
+  private static BigDecimal sum(List<Movement> movements) {
+    return movements.stream().map(Movement::signedAmount).reduce(BigDecimal.ZERO, BigDecimal::add);
+  }
+
+  private static Query byId(String accountId) {
+    return Query.query(where("_id").is(accountId));
+  }
+
+  private static Query pendingQuery(String accountId) {
+    Query q = Query.query(where("accountId").is(accountId).and("compacted").is(false));
+    q.fields().include("type", "amount");
+    return q;
+  }
+
+  private static Movement movement(String accountId, MovementType type, BigDecimal amount,
+      boolean compacted) {
+    return Movement.builder().accountId(accountId).type(type).amount(amount).compacted(compacted)
+        .createdAt(Instant.now()).build();
+  }
+
+  private static BigDecimal zeroIfNull(BigDecimal v) {
+    return v == null ? BigDecimal.ZERO : v;
+  }
+
+  /** Cuenta con el saldo real y cuántos movimientos quedaban sin compactar. */
+  private record Snapshot(Account account, int pending) {}
+}
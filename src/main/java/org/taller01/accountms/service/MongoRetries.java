@@ -0,0 +1,35 @@
+package org.taller01.accountms.service;
+
+import com.mongodb.MongoException;
+import java.time.Duration;
+import reactor.util.retry.Retry;
+
+/** Reintentos de transacciones Mongo abortadas por conflictos transitorios. */
+final class MongoRetries {
+
+  private MongoRetries() {}
+
+  static Retry transientTransactions(int maxAttempts) {
+    return Retry.backoff(maxAttempts, Duration.ofMillis(5)).filter(MongoRetries::isTransient)
+        .onRetryExhaustedThrow((spec, signal) -> signal.failure());
+  }
+
+  /** Spring traduce las excepciones del driver; la etiqueta queda en la causa. */
+  static boolean isTransient(Throwable e) {
+    for (Throwable t = e; t != null; t = t.getCause()) {
+      if (t instanceof StaleBalanceException)
+        return true;
+      if (t instanceof MongoException me
+          && me.hasErrorLabel(MongoException.TRANSIENT_TRANSACTION_ERROR_LABEL))
+        return true;
+    }
+    return false;
+  }
+
+  /** El saldo leído ya no coincide al escribir: se repite la transacción completa. */
+  static final class StaleBalanceException extends RuntimeException {
+    StaleBalanceException(String message) {
+      super(message, null, false, false);
+    }
+  }
+}
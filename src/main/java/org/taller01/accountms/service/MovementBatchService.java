@@ -0,0 +1,161 @@
+package org.taller01.accountms.service;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.http.HttpStatus.BAD_REQUEST;
+
+import java.math.BigDecimal;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiFunction;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.bson.types.Decimal128;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.ReactiveBulkOperations;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import org.springframework.web.server.ResponseStatusException;
+import org.taller01.accountms.domain.Account;
+import org.taller01.accountms.domain.MovementType;
+import org.taller01.accountms.dto.request.MovementCommand;
+import org.taller01.accountms.dto.response.MovementResult;
+import org.taller01.accountms.service.MongoRetries.StaleBalanceException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Aplica lotes de movimientos de TransactionMS en una transacción: una lectura de los saldos
+ * involucrados, simulación en orden ({@link MovementPlan}) y un único bulkWrite con un $inc neto
+ * por cuenta. Cada $inc se condiciona al saldo leído; cualquier escritura concurrente aborta la
+ * transacción y el lote se reintenta completo.
+ *
+ * <p>
+ * Ese camino solo ve {@code accounts.balance}: en modo libro todos los movimientos, y en las
+ * cuentas repartidas los de esa cuenta, se aplican uno a uno y en orden por {@link LedgerService} o
+ * {@link BalanceSlotService}, fuera de la transacción del lote. Ahí un retiro rechazado no informa
+ * saldo.
+ */
+@Service
+public class MovementBatchService {
+
+  private final ReactiveMongoTemplate mongo;
+  private final TransactionalOperator tx;
+  private final AccountCache cache;
+  private final LedgerService ledger;
+  private final BalanceSlotService slots;
+  private final int maxSize;
+
+  public MovementBatchService(ReactiveMongoTemplate mongo, TransactionalOperator tx,
+      AccountCache cache, LedgerService ledger, BalanceSlotService slots,
+      @Value("${accountms.batch.max-size:1000}") int maxSize) {
+    this.mongo = mongo;
+    this.tx = tx;
+    this.cache = cache;
+    this.ledger = ledger;
+    this.slots = slots;
+    this.maxSize = maxSize;
+  }
+
+  public Flux<MovementResult> apply(List<MovementCommand> commands) {
+    if (commands == null || commands.isEmpty())
+      return Flux.error(new ResponseStatusException(BAD_REQUEST, "El lote está vacío"));
+    if (commands.size() > maxSize)
+      return Flux.error(new ResponseStatusException(BAD_REQUEST,
+          "El lote supera el máximo de " + maxSize + " movimientos"));
+    for (MovementCommand c : commands) {
+      if (c == null || c.accountId() == null || c.type() == null)
+        return Flux.error(
+            new ResponseStatusException(BAD_REQUEST, "Cada movimiento requiere accountId y type"));
+      if (c.amount() == null || c.amount().compareTo(BigDecimal.ZERO) <= 0)
+        return Flux.error(new ResponseStatusException(BAD_REQUEST, "El monto debe ser positivo"));
+    }
+
+    if (ledger.enabled())
+      return oneByOne(commands, indices(commands, c -> true), ledger::deposit, ledger::withdraw);
+    List<String> ids = commands.stream().map(MovementCommand::accountId).distinct().toList();
+    return shardedAmong(ids).flatMapMany(sharded -> {
+      List<Integer> routed = indices(commands, c -> sharded.contains(c.accountId()));
+      List<Integer> direct = indices(commands, c -> !sharded.contains(c.accountId()));
+      Flux<MovementResult> results = Flux.merge(planned(commands, direct),
+          oneByOne(commands, routed, slots::deposit, slots::withdraw));
+      return results.sort(Comparator.comparingInt(MovementResult::getIndex));
+    });
+  }
+
+  /** Camino del lote: simulación y un bulkWrite en una transacción. */
+  private Flux<MovementResult> planned(List<MovementCommand> commands, List<Integer> indices) {
+    if (indices.isEmpty())
+      return Flux.empty();
+    List<MovementCommand> batch = indices.stream().map(commands::get).toList();
+    List<String> ids = batch.stream().map(MovementCommand::accountId).distinct().toList();
+    return tx
+        .transactional(readBalances(ids).map(balances -> MovementPlan.of(batch, balances))
+            .flatMap(this::write))
+        .retryWhen(MongoRetries.transientTransactions(3))
+        // Tras el commit: el bulkWrite no devuelve documentos, se invalidan las cuentas tocadas
+        .doOnNext(plan -> plan.deltas().forEach(d -> cache.invalidate(d.accountId())))
+        .flatMapIterable(MovementPlan::results)
+        .doOnNext(r -> r.setIndex(indices.get(r.getIndex())));
+  }
+
+  /**
+   * Movimientos de a uno, en el orden del lote, por el servicio que lleva el saldo de la cuenta.
+   */
+  private Flux<MovementResult> oneByOne(List<MovementCommand> commands, List<Integer> indices,
+      BiFunction<String, BigDecimal, Mono<MovementOutcome>> deposit,
+      BiFunction<String, BigDecimal, Mono<MovementOutcome>> withdraw) {
+    return Flux.fromIterable(indices).concatMap(i -> {
+      MovementCommand c = commands.get(i);
+      var op = c.type() == MovementType.DEPOSIT ? deposit : withdraw;
+      return op.apply(c.accountId(), c.amount()).doFinally(s -> cache.invalidate(c.accountId()))
+          .map(o -> new MovementResult(i, c.accountId(), c.type(), c.amount(), o.status(),
+              o.account() == null ? null : o.account().getBalance()));
+    });
+  }
+
+  /** Cuentas del lote repartidas según su propio documento, no según el reparto local. */
+  private Mono<Set<String>> shardedAmong(List<String> ids) {
+    Query q = Query.query(where("_id").in(ids).and("balanceSlots").gt(1));
+    q.fields().include("balanceSlots");
+    return mongo.find(q, Account.class)
+        .filter(acc -> acc.getBalanceSlots() != null && acc.getBalanceSlots() > 1)
+        .map(Account::getId).collect(Collectors.toSet());
+  }
+
+  private static List<Integer> indices(List<MovementCommand> commands,
+      Predicate<MovementCommand> filter) {
+    return IntStream.range(0, commands.size()).filter(i -> filter.test(commands.get(i))).boxed()
+        .toList();
+  }
+
+  private Mono<Map<String, BigDecimal>> readBalances(List<String> ids) {
+    Query q = Query.query(where("_id").in(ids));
+    q.fields().include("balance");
+    // HashMap: admite saldo null para cuentas existentes sin saldo
+    return mongo.find(q, Account.class).collect(HashMap::new,
+        (m, acc) -> m.put(acc.getId(), acc.getBalance()));
+  }
+
+  private Mono<MovementPlan> write(MovementPlan plan) {
+    if (plan.deltas().isEmpty())
+      return Mono.just(plan);
+    ReactiveBulkOperations bulk = mongo.bulkOps(BulkMode.UNORDERED, Account.class);
+    for (MovementPlan.Delta d : plan.deltas()) {
+      Criteria expected = where("_id").is(d.accountId()).and("balance")
+          .is(d.expected() == null ? null : new Decimal128(d.expected()));
+      bulk.updateOne(Query.query(expected), new Update().inc("balance", new Decimal128(d.net())));
+    }
+    return bulk.execute()
+        .flatMap(res -> res.getMatchedCount() == plan.deltas().size() ? Mono.just(plan)
+            : Mono.error(new StaleBalanceException("Saldo modificado durante el lote")));
+  }
+}
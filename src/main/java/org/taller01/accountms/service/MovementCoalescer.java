@@ -0,0 +1,197 @@
+package org.taller01.accountms.service;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.types.Decimal128;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+import org.taller01.accountms.domain.Account;
+import org.taller01.accountms.domain.MovementType;
+import org.taller01.accountms.dto.request.MovementCommand;
+import org.taller01.accountms.dto.response.MovementResult;
+import org.taller01.accountms.dto.response.MovementResult.Status;
+import org.taller01.accountms.service.MongoRetries.StaleBalanceException;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Agrupa los depósitos/retiros concurrentes de una misma cuenta (cuentas "calientes", p. ej. de
+ * recaudo) y los escribe con una sola actualización. Activado con
+ * {@code accountms.coalescing.enabled=true}.
+ *
+ * <p>
+ * Cada cuenta tiene un carril: el primer movimiento abre una ventana de {@code window}; al cerrarla
+ * se aplica el grupo (hasta {@code max-batch}) y lo que llegó mientras tanto forma el siguiente
+ * grupo sin esperar otra ventana. Las escrituras de una cuenta quedan así serializadas.
+ * <ul>
+ * <li>Solo depósitos: un findAndModify con el $inc total; cada llamador recibe el saldo tras su
+ * propio depósito.</li>
+ * <li>Con retiros: lectura del saldo, simulación en orden con {@link MovementPlan} (el retiro sin
+ * fondos se rechaza donde cae, igual que sin agrupar) y un $inc neto condicionado al saldo leído.
+ * Si otra escritura se adelanta, el grupo se vuelve a simular.</li>
+ * </ul>
+ */
+@Slf4j
+@Component
+public class MovementCoalescer {
+
+  private static final FindAndModifyOptions RETURN_NEW =
+      FindAndModifyOptions.options().returnNew(true);
+
+  private final ReactiveMongoTemplate mongo;
+  private final boolean enabled;
+  private final Duration window;
+  private final int maxBatch;
+  private final DistributionSummary groupSizes;
+  private final Scheduler scheduler = Schedulers.parallel();
+  private final Map<String, Lane> lanes = new ConcurrentHashMap<>();
+
+  public MovementCoalescer(ReactiveMongoTemplate mongo, MeterRegistry registry,
+      @Value("${accountms.coalescing.enabled:false}") boolean enabled,
+      @Value("${accountms.coalescing.window:2ms}") Duration window,
+      @Value("${accountms.coalescing.max-batch:256}") int maxBatch) {
+    this.mongo = mongo;
+    this.enabled = enabled;
+    this.window = window;
+    this.maxBatch = maxBatch;
+    this.groupSizes = DistributionSummary.builder("accountms.coalescing.group.size")
+        .description("Movimientos aplicados por escritura").register(registry);
+  }
+
+  public boolean enabled() {
+    return enabled;
+  }
+
+  public Mono<MovementOutcome> submit(MovementCommand command) {
+    return Mono.create(sink -> enqueue(new Pending(command, sink)));
+  }
+
+  private void enqueue(Pending p) {
+    while (true) {
+      Lane lane = lanes.computeIfAbsent(p.command().accountId(), Lane::new);
+      synchronized (lane) {
+        // Un carril cerrado ya salió del mapa: se toma (o crea) el siguiente
+        if (lane.closed)
+          continue;
+        lane.pending.add(p);
+        if (!lane.busy) {
+          lane.busy = true;
+          scheduler.schedule(() -> drain(lane), window.toNanos(), TimeUnit.NANOSECONDS);
+        }
+        return;
+      }
+    }
+  }
+
+  private void drain(Lane lane) {
+    List<Pending> group;
+    synchronized (lane) {
+      if (lane.pending.isEmpty()) {
+        lane.closed = true;
+        lanes.remove(lane.accountId, lane);
+        return;
+      }
+      List<Pending> head = lane.pending.subList(0, Math.min(lane.pending.size(), maxBatch));
+      group = new ArrayList<>(head);
+      head.clear();
+    }
+    groupSizes.record(group.size());
+    apply(lane.accountId, group).doFinally(s -> drain(lane)).subscribe(null,
+        e -> log.error("Error inesperado al aplicar un grupo de {}", lane.accountId, e));
+  }
+
+  private Mono<Void> apply(String accountId, List<Pending> group) {
+    boolean depositsOnly = group.stream().allMatch(p -> p.command().type() == MovementType.DEPOSIT);
+    Mono<Void> write = depositsOnly ? depositAll(accountId, group) : planAndWrite(accountId, group);
+    return write.onErrorResume(e -> {
+      group.forEach(p -> p.sink().error(e));
+      return Mono.empty();
+    });
+  }
+
+  /** Los depósitos conmutan: un $inc con el total, sin lectura previa. */
+  private Mono<Void> depositAll(String accountId, List<Pending> group) {
+    BigDecimal total =
+        group.stream().map(p -> p.command().amount()).reduce(BigDecimal.ZERO, BigDecimal::add);
+    Query q = Query.query(where("_id").is(accountId));
+    Update u = new Update().inc("balance", new Decimal128(total));
+    return mongo.findAndModify(q, u, RETURN_NEW, Account.class).doOnNext(updated -> {
+      // Saldo tras cada depósito = saldo final - depósitos posteriores del grupo
+      BigDecimal balance = updated.getBalance().subtract(total);
+      for (Pending p : group) {
+        balance = balance.add(p.command().amount());
+        p.sink().success(
+            new MovementOutcome(Status.APPLIED, updated.toBuilder().balance(balance).build()));
+      }
+    }).switchIfEmpty(Mono.fromRunnable(() -> notFound(group))).then();
+  }
+
+  private Mono<Void> planAndWrite(String accountId, List<Pending> group) {
+    List<MovementCommand> commands = group.stream().map(Pending::command).toList();
+    return Mono.defer(() -> mongo.findById(accountId, Account.class).flatMap(current -> {
+      // HashMap: admite saldo null
+      Map<String, BigDecimal> balances = new HashMap<>();
+      balances.put(accountId, current.getBalance());
+      MovementPlan plan = MovementPlan.of(commands, balances);
+      MovementPlan.Delta delta = plan.deltas().get(0);
+      if (delta.net().signum() == 0)
+        return Mono.just(complete(group, plan, current));
+      Query q = Query.query(where("_id").is(accountId).and("balance")
+          .is(delta.expected() == null ? null : new Decimal128(delta.expected())));
+      return mongo.findAndModify(q, new Update().inc("balance", new Decimal128(delta.net())),
+          RETURN_NEW, Account.class).map(updated -> complete(group, plan, updated)).switchIfEmpty(
+              Mono.error(new StaleBalanceException("Saldo modificado durante el grupo")));
+    }).switchIfEmpty(Mono.fromRunnable(() -> notFound(group))))
+        .retryWhen(MongoRetries.transientTransactions(5)).then();
+  }
+
+  private static Account complete(List<Pending> group, MovementPlan plan, Account account) {
+    List<MovementResult> results = plan.results();
+    for (int i = 0; i < group.size(); i++) {
+      MovementResult r = results.get(i);
+      group.get(i).sink()
+          .success(r.getStatus() == Status.APPLIED
+              ? new MovementOutcome(Status.APPLIED,
+                  account.toBuilder().balance(r.getBalance()).build())
+              : new MovementOutcome(r.getStatus(), null));
+    }
+    return account;
+  }
+
+  private static void notFound(List<Pending> group) {
+    group.forEach(p -> p.sink().success(new MovementOutcome(Status.ACCOUNT_NOT_FOUND, null)));
+  }
+
+  private record Pending(MovementCommand command, MonoSink<MovementOutcome> sink) {}
+
+  /**
+   * Movimientos en espera de una cuenta; {@code busy} mientras hay ventana o escritura en curso.
+   */
+  private static final class Lane {
+    private final String accountId;
+    private final List<Pending> pending = new ArrayList<>();
+    private boolean busy;
+    private boolean closed;
+
+    Lane(String accountId) {
+      this.accountId = accountId;
+    }
+  }
+}
@@ -0,0 +1,10 @@
+package org.taller01.accountms.service;
+
+import org.taller01.accountms.domain.Account;
+import org.taller01.accountms.dto.response.MovementResult.Status;
+
+/**
+ * Resultado de un depósito/retiro aplicado fuera del camino directo (agrupado o en el libro de
+ * movimientos); {@code account} solo viene si se aplicó. AccountService lo traduce a 404/409.
+ */
+public record MovementOutcome(Status status,Account account){}
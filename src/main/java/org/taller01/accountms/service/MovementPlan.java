@@ -0,0 +1,84 @@
+package org.taller01.accountms.service;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.taller01.accountms.domain.MovementType;
+import org.taller01.accountms.dto.request.MovementCommand;
+import org.taller01.accountms.dto.response.MovementResult;
+import org.taller01.accountms.dto.response.MovementResult.Status;
+
+/**
+ * Simula en memoria, y en orden, una secuencia de movimientos sobre los saldos leídos. Produce el
+ * resultado de cada movimiento y un único delta neto por cuenta, de modo que el lote completo se
+ * escribe con una actualización por cuenta en lugar de una por movimiento.
+ */
+final class MovementPlan {
+
+  /** Delta neto a aplicar sobre una cuenta cuyo saldo leído era {@code expected}. */
+  record Delta(String accountId, BigDecimal expected, BigDecimal net) {}
+
+  private final List<MovementResult> results;
+  private final List<Delta> deltas;
+
+  private MovementPlan(List<MovementResult> results, List<Delta> deltas) {
+    this.results = results;
+    this.deltas = deltas;
+  }
+
+  /**
+   * @param balances saldo actual de cada cuenta existente (las ausentes se consideran inexistentes;
+   *        un saldo {@code null} se trata como 0)
+   */
+  static MovementPlan of(List<MovementCommand> commands, Map<String, BigDecimal> balances) {
+    Map<String, BigDecimal> running = new LinkedHashMap<>();
+    List<MovementResult> results = new ArrayList<>(commands.size());
+    for (int i = 0; i < commands.size(); i++) {
+      MovementCommand c = commands.get(i);
+      if (!balances.containsKey(c.accountId())) {
+        results.add(result(i, c, Status.ACCOUNT_NOT_FOUND, null));
+        continue;
+      }
+      BigDecimal current =
+          running.computeIfAbsent(c.accountId(), id -> zeroIfNull(balances.get(id)));
+      if (c.type() == MovementType.WITHDRAW && current.compareTo(c.amount()) < 0) {
+        results.add(result(i, c, Status.INSUFFICIENT_FUNDS, current));
+        continue;
+      }
+      BigDecimal next =
+          c.type() == MovementType.DEPOSIT ? current.add(c.amount()) : current.subtract(c.amount());
+      running.put(c.accountId(), next);
+      results.add(result(i, c, Status.APPLIED, next));
+    }
+
+    List<Delta> deltas = new ArrayList<>(running.size());
+    running.forEach((id, finalBalance) -> {
+      BigDecimal expected = balances.get(id);
+      deltas.add(new Delta(id, expected, finalBalance.subtract(zeroIfNull(expected))));
+    });
+    return new MovementPlan(results, deltas);
+  }
+
+  List<MovementResult> results() {
+    return results;
+  }
+
+  /**
+   * Una entrada por cuenta existente del lote (incluso con neto 0: la escritura confirma que el
+   * saldo no cambió mientras tanto), en orden de primera aparición.
+   */
+  List<Delta> deltas() {
+    return deltas;
+  }
+
+  private static MovementResult result(int i, MovementCommand c, Status status,
+      BigDecimal balance) {
+    return new MovementResult(i, c.accountId(), c.type(), c.amount(), status, balance);
+  }
+
+  private static BigDecimal zeroIfNull(BigDecimal v) {
+    return v == null ? BigDecimal.ZERO : v;
+  }
+}
@@ -0,0 +1,145 @@
+package org.taller01.accountms.client;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.taller01.accountms.client.ClientMsClient.Validation;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ClientLookupBatcherTest {
+
+    private static final String C1 = "6650a1b2c3d4e5f600000001";
+    private static final String C2 = "6650a1b2c3d4e5f600000002";
+    private static final String C3 = "6650a1b2c3d4e5f600000003";
+    private static final String X9 = "6650a1b2c3d4e5f600000009";
+    private static final Set<String> EXISTING = Set.of(C1, C2, C3);
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+    private final AtomicInteger singleCalls = new AtomicInteger();
+    private DisposableServer server;
+
+    @AfterEach
+    void tearDown() {
+        server.disposeNow();
+    }
+
+    /** ClientMS local: GET /clientes/{id} siempre; POST /clientes/lote solo si {@code bulk}. */
+    private void startClientMs(boolean bulk) {
+        server = HttpServer.create().host("localhost").port(0).route(routes -> {
+            routes.get("/clientes/{id}", (req, res) -> {
+                singleCalls.incrementAndGet();
+                return EXISTING.contains(req.param("id")) ? res.sendString(Mono.just("{}"))
+                        : res.status(404).send();
+            });
+            routes.post(ClientMsClient.BATCH_PATH, (req, res) -> {
+                if (!bulk)
+                    return res.status(404).send();
+                return res.header("Content-Type", "application/json")
+                        .sendString(req.receive().aggregate().asString().map(this::found));
+            });
+        }).bindNow();
+    }
+
+    private String found(String body) {
+        try {
+            List<String> ids = mapper.readValue(body, new TypeReference<List<String>>() {});
+            batchSizes.add(ids.size());
+            return mapper.writeValueAsString(ids.stream().filter(EXISTING::contains)
+                    .map(id -> Map.of("id", id, "nombre", "Cliente " + id)).toList());
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private ClientLookupBatcher batcher(int maxSize) {
+        var client = new ClientMsClient(WebClient.builder(), "http://localhost:" + server.port(),
+                Duration.ofSeconds(1), Duration.ofSeconds(10), CircuitBreakerRegistry.ofDefaults(),
+                BulkheadRegistry.ofDefaults(), registry);
+        return new ClientLookupBatcher(client, registry, true, Duration.ofMillis(50), maxSize,
+                Duration.ofMinutes(5));
+    }
+
+    private Mono<Map<String, Validation>> validarTodos(ClientLookupBatcher batcher, String... ids) {
+        return Flux.just(ids).flatMap(id -> batcher.validar(id).map(v -> Map.entry(id, v)))
+                .collectMap(Map.Entry::getKey, Map.Entry::getValue);
+    }
+
+    @Test
+    void concurrentLookups_areResolvedWithOneBulkCall() {
+        startClientMs(true);
+        var batcher = batcher(64);
+
+        StepVerifier.create(validarTodos(batcher, C1, C2, X9, C1))
+                .expectNext(Map.of(C1, Validation.EXISTS, C2, Validation.EXISTS,
+                        X9, Validation.NOT_FOUND))
+                .verifyComplete();
+
+        assertEquals(List.of(3), batchSizes);
+        assertEquals(0, singleCalls.get());
+        assertEquals(3.0, registry.get("clientms.batch.size").summary().totalAmount());
+    }
+
+    @Test
+    void maxSize_dispatchesFullBatchesWithoutWaitingForTheWindow() {
+        startClientMs(true);
+        var batcher = batcher(2);
+
+        StepVerifier.create(validarTodos(batcher, C1, C2, C3, X9))
+                .expectNextMatches(r -> r.size() == 4 && r.get(X9) == Validation.NOT_FOUND)
+                .verifyComplete();
+
+        assertEquals(List.of(2, 2), batchSizes);
+    }
+
+    @Test
+    void malformedIds_areInvalid_withoutBeingSentInTheBatch() {
+        startClientMs(true);
+        var batcher = batcher(64);
+
+        StepVerifier.create(validarTodos(batcher, C1, "no-es-un-id", X9))
+                .expectNext(Map.of(C1, Validation.EXISTS, "no-es-un-id", Validation.INVALID_ID,
+                        X9, Validation.NOT_FOUND))
+                .verifyComplete();
+
+        assertEquals(List.of(2), batchSizes);
+        assertEquals(0, singleCalls.get());
+    }
+
+    @Test
+    void bulkUnsupported_fallsBackToSingleCalls_andSkipsBulkAfterwards() {
+        startClientMs(false);
+        var batcher = batcher(64);
+
+        StepVerifier.create(validarTodos(batcher, C1, X9))
+                .expectNext(Map.of(C1, Validation.EXISTS, X9, Validation.NOT_FOUND))
+                .verifyComplete();
+        StepVerifier.create(validarTodos(batcher, C2, C3))
+                .expectNext(Map.of(C2, Validation.EXISTS, C3, Validation.EXISTS))
+                .verifyComplete();
+
+        assertEquals(4, singleCalls.get());
+        assertEquals(1.0, registry.counter("clientms.batch.fallbacks").count());
+        assertEquals(1L, registry.get("clientms.batch.requests").tag("status", "404").timer()
+                .count());
+    }
+}
@@ -0,0 +1,127 @@
+package org.taller01.accountms.client;
+
+import io.github.resilience4j.bulkhead.BulkheadConfig;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ClientMsClientTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final AtomicInteger calls = new AtomicInteger();
+
+    private ClientMsClient client(ExchangeFunction fn, Duration timeout, int maxConcurrent) {
+        ExchangeFunction counting = req -> {
+            calls.incrementAndGet();
+            return fn.exchange(req);
+        };
+        var breakers = CircuitBreakerRegistry.of(CircuitBreakerConfig.custom()
+                .slidingWindowSize(4).minimumNumberOfCalls(4).failureRateThreshold(50)
+                .waitDurationInOpenState(Duration.ofMinutes(1)).build());
+        var bulkheads = BulkheadRegistry.of(BulkheadConfig.custom()
+                .maxConcurrentCalls(maxConcurrent).maxWaitDuration(Duration.ZERO).build());
+        return new ClientMsClient(WebClient.builder().exchangeFunction(counting), "http://fake",
+                Duration.ofSeconds(1), timeout, breakers, bulkheads, registry);
+    }
+
+    private void expect503(Mono<?> call) {
+        StepVerifier.create(call)
+                .expectErrorSatisfies(err -> {
+                    var ex = (ResponseStatusException) err;
+                    assert ex.getStatusCode().value() == 503;
+                })
+                .verify();
+    }
+
+    private double rejections(String reason) {
+        return registry.counter("clientms.rejections", "reason", reason).count();
+    }
+
+    @Test
+    void notFound_isAnOutcome_notAFailure() {
+        var client = client(req -> Mono.just(ClientResponse.create(HttpStatus.NOT_FOUND).build()),
+                Duration.ofSeconds(2), 10);
+
+        StepVerifier.create(client.validar("X"))
+                .expectNext(ClientMsClient.Validation.NOT_FOUND)
+                .verifyComplete();
+        assertEquals(1, registry.timer("clientms.requests", "status", "404").count());
+    }
+
+    @Test
+    void slowClientMs_timesOut_with503() {
+        var client = client(req -> Mono.never(), Duration.ofMillis(50), 10);
+
+        expect503(client.validar("C1"));
+        assertEquals(1.0, rejections("timeout"));
+        assertEquals(1, registry.timer("clientms.requests", "status", "timeout").count());
+    }
+
+    @Test
+    void repeatedFailures_openCircuit_andFailFastWithoutCalling() {
+        var client = client(req -> Mono.just(
+                ClientResponse.create(HttpStatus.INTERNAL_SERVER_ERROR).build()),
+                Duration.ofSeconds(2), 10);
+
+        for (int i = 0; i < 4; i++) {
+            expect503(client.validar("C1"));
+        }
+        int callsBeforeOpen = calls.get();
+
+        expect503(client.validar("C1"));
+        assertEquals(callsBeforeOpen, calls.get());
+        assertEquals(1.0, rejections("circuit_open"));
+        assertEquals(1.0, registry.counter("clientms.circuitbreaker.transitions",
+                "from", "CLOSED", "to", "OPEN").count());
+    }
+
+    @Test
+    void unexpected4xx_isBadRequest_butNotABreakerFailure() {
+        var client = client(req -> Mono.just(ClientResponse.create(HttpStatus.FORBIDDEN).build()),
+                Duration.ofSeconds(2), 10);
+
+        for (int i = 0; i < 6; i++) {
+            StepVerifier.create(client.validar("C1"))
+                    .expectErrorSatisfies(err -> {
+                        var ex = (ResponseStatusException) err;
+                        assert ex.getStatusCode().value() == 400;
+                    })
+                    .verify();
+        }
+        StepVerifier.create(client.validarLote(List.of("6650a1b2c3d4e5f600000001")))
+                .expectError(ResponseStatusException.class)
+                .verify();
+
+        // Todas las llamadas llegaron a ClientMS: el circuito sigue cerrado
+        assertEquals(7, calls.get());
+        assertEquals(0.0, rejections("circuit_open"));
+        assertEquals(6, registry.timer("clientms.requests", "status", "403").count());
+    }
+
+    @Test
+    void bulkheadFull_rejectsExtraConcurrentCalls() {
+        var client = client(req -> Mono.never(), Duration.ofSeconds(5), 1);
+
+        var inFlight = client.validar("C1").subscribe(v -> {}, e -> {});
+        expect503(client.validar("C2"));
+        inFlight.dispose();
+
+        assertEquals(1, calls.get());
+        assertEquals(1.0, rejections("bulkhead_full"));
+    }
+}
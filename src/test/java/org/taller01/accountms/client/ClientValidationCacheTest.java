@@ -0,0 +1,107 @@
+package org.taller01.accountms.client;
+
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ClientValidationCacheTest {
+
+    private final AtomicInteger calls = new AtomicInteger();
+    private SimpleMeterRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+    }
+
+    private ClientValidationCache cache(ExchangeFunction fn) {
+        ExchangeFunction counting = req -> {
+            calls.incrementAndGet();
+            return fn.exchange(req);
+        };
+        var client = new ClientMsClient(WebClient.builder().exchangeFunction(counting), "http://fake",
+                Duration.ofSeconds(1), Duration.ofSeconds(2), CircuitBreakerRegistry.ofDefaults(),
+                BulkheadRegistry.ofDefaults(), registry);
+        var batcher = new ClientLookupBatcher(client, registry, false, Duration.ZERO, 1,
+                Duration.ZERO);
+        return new ClientValidationCache(batcher, registry, 100, Duration.ofMinutes(5),
+                Duration.ofSeconds(10));
+    }
+
+    private ExchangeFunction status(HttpStatus s) {
+        return req -> Mono.just(ClientResponse.create(s).build());
+    }
+
+    @Test
+    void existingClient_isCached_andCountsHitsAndMisses() {
+        var cache = cache(status(HttpStatus.OK));
+
+        StepVerifier.create(cache.validarCliente("C1")).verifyComplete();
+        StepVerifier.create(cache.validarCliente("C1")).verifyComplete();
+
+        assertEquals(1, calls.get());
+        assertEquals(1.0, registry.get("cache.gets").tag("cache", "clientms.validation")
+                .tag("result", "hit").functionCounter().count());
+        assertEquals(1.0, registry.get("cache.gets").tag("cache", "clientms.validation")
+                .tag("result", "miss").functionCounter().count());
+    }
+
+    @Test
+    void notFound_isCachedBriefly_andMapsTo400() {
+        var cache = cache(status(HttpStatus.NOT_FOUND));
+
+        for (int i = 0; i < 2; i++) {
+            StepVerifier.create(cache.validarCliente("X"))
+                    .expectErrorSatisfies(err -> {
+                        var ex = (ResponseStatusException) err;
+                        assert ex.getStatusCode().value() == 400;
+                    })
+                    .verify();
+        }
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void serverError_isNotCached() {
+        var cache = cache(status(HttpStatus.INTERNAL_SERVER_ERROR));
+
+        for (int i = 0; i < 2; i++) {
+            StepVerifier.create(cache.validarCliente("C1"))
+                    .expectErrorSatisfies(err -> {
+                        var ex = (ResponseStatusException) err;
+                        assert ex.getStatusCode().value() == 503;
+                    })
+                    .verify();
+        }
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    void concurrentLookups_shareOneInFlightCall() {
+        Sinks.One<ClientResponse> pending = Sinks.one();
+        var cache = cache(req -> pending.asMono());
+
+        var first = cache.validarCliente("C1").toFuture();
+        var second = cache.validarCliente("C1").toFuture();
+        pending.tryEmitValue(ClientResponse.create(HttpStatus.OK).build());
+
+        first.join();
+        second.join();
+        assertEquals(1, calls.get());
+    }
+}
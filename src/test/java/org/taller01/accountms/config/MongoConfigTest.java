@@ -0,0 +1,29 @@
+package org.taller01.accountms.config;
+
+import org.bson.types.Decimal128;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+
+class MongoConfigTest {
+
+    @Test
+    void bigDecimal_roundTripsThroughDecimal128() {
+        var value = new BigDecimal("1234.50");
+        Decimal128 stored = MongoConfig.BigDecimalToDecimal128.INSTANCE.convert(value);
+
+        assert stored.equals(new Decimal128(value));
+        assert MongoConfig.Decimal128ToBigDecimal.INSTANCE.convert(stored).equals(value);
+    }
+
+    @Test
+    void negativeZero_isReadAsZero() {
+        // -0.00: lo que bigDecimalValue() rechaza con ArithmeticException
+        var negativeZero = Decimal128.parse("-0.00");
+
+        var read = MongoConfig.Decimal128ToBigDecimal.INSTANCE.convert(negativeZero);
+        assert read.signum() == 0 && read.scale() == 2;
+        assert MongoConfig.Decimal128ToBigDecimal.INSTANCE.convert(Decimal128.parse("-5.25"))
+                .equals(new BigDecimal("-5.25"));
+    }
+}
@@ -0,0 +1,49 @@
+package org.taller01.accountms.config;
+
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MongoIndexInitializerTest {
+
+    @Test
+    void containsCollScan_detectsNestedStages() {
+        var plan = new Document("stage", "SORT")
+                .append("inputStage", new Document("stage", "COLLSCAN").append("direction", "forward"));
+
+        assertTrue(MongoIndexInitializer.containsCollScan(plan));
+    }
+
+    @Test
+    void containsCollScan_detectsStagesInsideArrays() {
+        var plan = new Document("stage", "OR").append("inputStages", List.of(
+                new Document("stage", "IXSCAN").append("indexName", "clientId_1__id_1"),
+                new Document("stage", "COLLSCAN")));
+
+        assertTrue(MongoIndexInitializer.containsCollScan(plan));
+    }
+
+    @Test
+    void containsCollScan_indexScanIsClean() {
+        var plan = new Document("stage", "FETCH")
+                .append("inputStage", new Document("stage", "IXSCAN")
+                        .append("indexName", "clientId_1__id_1")
+                        .append("keyPattern", new Document("clientId", 1).append("_id", 1)));
+
+        assertFalse(MongoIndexInitializer.containsCollScan(plan));
+    }
+
+    @Test
+    void everyQueryShape_hasAnIndexWithMatchingPrefix() {
+        for (var shape : MongoIndexInitializer.SHAPES) {
+            var first = shape.filter().keySet().iterator().next();
+            assertTrue(MongoIndexInitializer.INDEXES.stream()
+                            .anyMatch(i -> i.getIndexKeys().keySet().iterator().next().equals(first)),
+                    "Sin índice para " + shape.name());
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package org.taller01.accountms.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
@@ -9,14 +11,27 @@ import org.springframework.test.web.reactive.server.WebTestClient;
 import org.springframework.beans.factory.annotation.Autowired;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
 
+import org.taller01.accountms.config.WebCodecsConfig;
 import org.taller01.accountms.domain.Account;
 import org.taller01.accountms.domain.AccountType;
+import org.taller01.accountms.domain.MovementType;
 import org.taller01.accountms.dto.request.CreateAccountRequest;
+import org.taller01.accountms.dto.request.MovementCommand;
+import org.taller01.accountms.dto.response.AccountPage;
 import org.taller01.accountms.dto.response.AccountResponse;
+import org.taller01.accountms.dto.response.ImportResult;
+import org.taller01.accountms.dto.response.MovementResult;
+import org.taller01.accountms.dto.response.MovementResult.Status;
+import org.taller01.accountms.service.AccountImportService;
+import org.taller01.accountms.service.AccountImportService.Format;
 import org.taller01.accountms.service.AccountService;
+import org.taller01.accountms.service.IdempotencyService;
+import org.taller01.accountms.service.MovementBatchService;
 
 import java.math.BigDecimal;
+import java.util.List;
 
 @WebFluxTest(controllers = AccountController.class)
 class AccountControllerTest {
@@ -27,6 +42,15 @@ class AccountControllerTest {
     @MockBean
     private AccountService service;
 
+    @MockBean
+    private MovementBatchService batchService;
+
+    @MockBean
+    private IdempotencyService idempotency;
+
+    @MockBean
+    private AccountImportService importService;
+
     private Account acc(String id, String num, double bal, AccountType type) {
         return Account.builder()
                 .id(id)
@@ -39,18 +63,61 @@ class AccountControllerTest {
     }
 
     @Test
-    void listAll_ok() {
-        Mockito.when(service.listAll()).thenReturn(Flux.just(
+    void listAll_ok_returnsPageWithCursor() {
+        Mockito.when(service.listAll("66ea0000000000000000baa0", 2, null)).thenReturn(Mono.just(
+                new AccountPage(List.of(
+                        AccountResponse.from(acc("A1","SV-000001",10.0,AccountType.SAVINGS)),
+                        AccountResponse.from(acc("A2","CH-000002",0.0,AccountType.CHECKING))),
+                        "A2")));
+
+        client.get().uri("/cuentas?limit=2&after=66ea0000000000000000baa0")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_JSON)
+                .expectBody(AccountPage.class)
+                .consumeWith(r -> {
+                    var page = r.getResponseBody();
+                    assert page != null && page.getItems().size() == 2;
+                    assert "A2".equals(page.getNextCursor());
+                });
+    }
+
+    @Test
+    void listAll_ndjson_streamsRowsWithoutPageEnvelope() {
+        Mockito.when(service.streamAll(null, null)).thenReturn(Flux.just(
                 acc("A1","SV-000001",10.0,AccountType.SAVINGS),
-                acc("A2","CH-000002",0.0,AccountType.CHECKING)
-        ));
+                acc("A2","CH-000002",0.0,AccountType.CHECKING)));
 
         client.get().uri("/cuentas")
+                .accept(MediaType.APPLICATION_NDJSON)
                 .exchange()
                 .expectStatus().isOk()
-                .expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_JSON)
-                .expectBodyList(AccountResponse.class)
-                .hasSize(2);
+                .expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON)
+                .returnResult(AccountResponse.class)
+                .getResponseBody()
+                .as(StepVerifier::create)
+                .expectNextMatches(a -> a.getId().equals("A1"))
+                .expectNextMatches(a -> a.getId().equals("A2"))
+                .verifyComplete();
+
+        Mockito.verify(service, Mockito.never()).listAll(Mockito.any(), Mockito.any(), Mockito.any());
+    }
+
+    @Test
+    void listByClient_sse_streamsEvents() {
+        Mockito.when(service.streamByClientId("C1", null, null))
+                .thenReturn(Flux.just(acc("A1","SV-000001",10.0,AccountType.SAVINGS)));
+
+        client.get().uri("/cuentas/cliente/C1")
+                .accept(MediaType.TEXT_EVENT_STREAM)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentTypeCompatibleWith(MediaType.TEXT_EVENT_STREAM)
+                .returnResult(AccountResponse.class)
+                .getResponseBody()
+                .as(StepVerifier::create)
+                .expectNextMatches(a -> a.getId().equals("A1"))
+                .verifyComplete();
     }
 
     @Test
@@ -84,4 +151,52 @@ class AccountControllerTest {
                 .exchange()
                 .expectStatus().isNoContent();
     }
+
+    @Test
+    void internalBatch_smile_negotiatedForRequestAndResponse() throws Exception {
+        var smile = new ObjectMapper(new SmileFactory());
+        var commands = List.of(new MovementCommand("A1", MovementType.DEPOSIT, new BigDecimal("10.50")));
+        Mockito.when(batchService.apply(commands)).thenReturn(Flux.just(new MovementResult(0, "A1",
+                MovementType.DEPOSIT, new BigDecimal("10.50"), Status.APPLIED, new BigDecimal("60.50"))));
+
+        client.post().uri("/cuentas/internal/movimientos")
+                .contentType(WebCodecsConfig.SMILE)
+                .accept(WebCodecsConfig.SMILE)
+                .bodyValue(smile.writeValueAsBytes(commands))
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentTypeCompatibleWith(WebCodecsConfig.SMILE)
+                .expectBody(byte[].class)
+                .consumeWith(r -> {
+                    try {
+                        MovementResult[] results =
+                                smile.readValue(r.getResponseBody(), MovementResult[].class);
+                        assert results.length == 1
+                                && results[0].getBalance().compareTo(new BigDecimal("60.50")) == 0;
+                    } catch (java.io.IOException e) {
+                        throw new AssertionError(e);
+                    }
+                });
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void import_csv_splitsLines_andStreamsNdjsonResults() {
+        var captured = new java.util.ArrayList<String>();
+        Mockito.when(importService.importLines(Mockito.any(Flux.class), Mockito.eq(Format.CSV)))
+                .thenAnswer(inv -> ((Flux<String>) inv.getArgument(0))
+                        .doOnNext(captured::add)
+                        .index()
+                        .map(l -> ImportResult.created(l.getT1() + 1, "A" + l.getT1(), "SV-000000000" + l.getT1())));
+
+        client.post().uri("/cuentas/import")
+                .contentType(MediaType.parseMediaType("text/csv"))
+                .bodyValue("clientId,initialBalance,accountType\nC1,10,SAVINGS\nC2,0,CHECKING\n")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON)
+                .expectBodyList(ImportResult.class).hasSize(3);
+
+        assert captured.equals(List.of("clientId,initialBalance,accountType", "C1,10,SAVINGS", "C2,0,CHECKING"));
+    }
 }
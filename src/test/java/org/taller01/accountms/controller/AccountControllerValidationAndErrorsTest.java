@@ -12,15 +12,24 @@ import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.math.BigDecimal;
+import java.util.List;
+import java.util.function.Supplier;
 
 import org.springframework.web.server.ResponseStatusException;
 import org.taller01.accountms.domain.Account;
 import org.taller01.accountms.domain.AccountType;
+import org.taller01.accountms.domain.MovementType;
+import org.taller01.accountms.dto.response.AccountPage;
 import org.taller01.accountms.dto.response.AccountResponse;
+import org.taller01.accountms.dto.response.BalanceResponse;
+import org.taller01.accountms.dto.response.MovementResult;
 import org.taller01.accountms.exception.GlobalExceptionHandler;
 import org.taller01.accountms.exception.ApiError;
 import org.taller01.accountms.exception.ResourceNotFoundException;
+import org.taller01.accountms.service.AccountImportService;
 import org.taller01.accountms.service.AccountService;
+import org.taller01.accountms.service.IdempotencyService;
+import org.taller01.accountms.service.MovementBatchService;
 
 @WebFluxTest(controllers = AccountController.class)
 @Import(GlobalExceptionHandler.class)
@@ -32,6 +41,15 @@ class AccountControllerValidationAndErrorsTest {
     @MockBean
     private AccountService service;
 
+    @MockBean
+    private MovementBatchService batchService;
+
+    @MockBean
+    private IdempotencyService idempotency;
+
+    @MockBean
+    private AccountImportService importService;
+
     private Account acc(String id, String num, double bal, AccountType type) {
         return Account.builder().id(id).clientId("C1").accountNumber(num)
                 .balance(BigDecimal.valueOf(bal)).active(true).type(type).build();
@@ -77,7 +95,7 @@ class AccountControllerValidationAndErrorsTest {
 
     @Test
     void obtener_notFound_mapsTo404() {
-        Mockito.when(service.getById("NOPE"))
+        Mockito.when(service.getById("NOPE", null))
                 .thenReturn(Mono.error(new ResourceNotFoundException("Cuenta no encontrada")));
 
         client.get().uri("/cuentas/NOPE")
@@ -90,16 +108,56 @@ class AccountControllerValidationAndErrorsTest {
                 });
     }
 
+    @Test
+    void obtener_withFields_omitsUnrequestedProperties() {
+        Mockito.when(service.getById("A1", "id,balance")).thenReturn(Mono.just(
+                Account.builder().id("A1").balance(new BigDecimal("10")).build()));
+
+        client.get().uri("/cuentas/A1?fields=id,balance")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.id").isEqualTo("A1")
+                .jsonPath("$.balance").isEqualTo(10)
+                .jsonPath("$.clientId").doesNotExist()
+                .jsonPath("$.accountNumber").doesNotExist();
+    }
+
+    @Test
+    void saldo_ok_and_batch() {
+        Mockito.when(service.getBalance("A1"))
+                .thenReturn(Mono.just(new BalanceResponse("A1", new BigDecimal("10"), true)));
+        Mockito.when(service.getBalances(List.of("A1", "A2"))).thenReturn(Flux.just(
+                new BalanceResponse("A1", new BigDecimal("10"), true),
+                new BalanceResponse("A2", BigDecimal.ZERO, false)));
+
+        client.get().uri("/cuentas/A1/saldo")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.balance").isEqualTo(10)
+                .jsonPath("$.active").isEqualTo(true);
+
+        client.get().uri("/cuentas/saldos?ids=A1,A2")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBodyList(BalanceResponse.class)
+                .hasSize(2);
+    }
+
     @Test
     void listarPorCliente_ok() {
-        Mockito.when(service.listByClientId("C1"))
-                .thenReturn(Flux.just(acc("A1","SV-000001",10,AccountType.SAVINGS)));
+        Mockito.when(service.listByClientId("C1", null, null, null)).thenReturn(Mono.just(new AccountPage(
+                List.of(AccountResponse.from(acc("A1","SV-000001",10,AccountType.SAVINGS))), null)));
 
         client.get().uri("/cuentas/cliente/C1")
                 .exchange()
                 .expectStatus().isOk()
-                .expectBodyList(AccountResponse.class)
-                .hasSize(1);
+                .expectBody(AccountPage.class)
+                .consumeWith(r -> {
+                    var page = r.getResponseBody();
+                    assert page != null && page.getItems().size() == 1 && page.getNextCursor() == null;
+                });
     }
 
     @Test
@@ -122,9 +180,14 @@ class AccountControllerValidationAndErrorsTest {
     }
 
     @Test
+    @SuppressWarnings("unchecked")
     void internal_deposit_ok_hiddenButReachable() {
         Mockito.when(service.deposit("A1", new BigDecimal("50")))
                 .thenReturn(Mono.just(acc("A1","SV-000001",150,AccountType.SAVINGS)));
+        // Sin cabecera el comando se ejecuta directamente
+        Mockito.when(idempotency.execute(Mockito.isNull(), Mockito.eq(MovementType.DEPOSIT),
+                        Mockito.eq("A1"), Mockito.any(), Mockito.any()))
+                .thenAnswer(inv -> ((Supplier<Mono<Account>>) inv.getArgument(4)).get());
 
         client.post().uri(uriBuilder -> uriBuilder
                         .path("/cuentas/internal/{id}/deposito").queryParam("amount","50").build("A1"))
@@ -136,4 +199,42 @@ class AccountControllerValidationAndErrorsTest {
                     assert body != null && body.getId().equals("A1");
                 });
     }
+
+    @Test
+    void internal_withdraw_forwardsIdempotencyKey() {
+        Mockito.when(idempotency.execute(Mockito.eq("tx-42"), Mockito.eq(MovementType.WITHDRAW),
+                        Mockito.eq("A1"), Mockito.eq(new BigDecimal("50")), Mockito.any()))
+                .thenReturn(Mono.just(acc("A1","SV-000001",100,AccountType.SAVINGS)));
+
+        client.post().uri(uriBuilder -> uriBuilder
+                        .path("/cuentas/internal/{id}/retiro").queryParam("amount","50").build("A1"))
+                .header("Idempotency-Key", "tx-42")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(AccountResponse.class)
+                .consumeWith(r -> {
+                    var body = r.getResponseBody();
+                    assert body != null && body.getBalance().compareTo(new BigDecimal("100")) == 0;
+                });
+    }
+
+    @Test
+    void internal_batch_returnsOneResultPerMovement() {
+        Mockito.when(batchService.apply(Mockito.anyList())).thenReturn(Flux.just(
+                new MovementResult(0, "A1", MovementType.DEPOSIT, BigDecimal.TEN,
+                        MovementResult.Status.APPLIED, new BigDecimal("110")),
+                new MovementResult(1, "A1", MovementType.WITHDRAW, new BigDecimal("500"),
+                        MovementResult.Status.INSUFFICIENT_FUNDS, new BigDecimal("110"))));
+
+        client.post().uri("/cuentas/internal/movimientos")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("""
+            [{"accountId":"A1","type":"DEPOSIT","amount":10},
+             {"accountId":"A1","type":"WITHDRAW","amount":500}]
+            """)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBodyList(MovementResult.class)
+                .hasSize(2);
+    }
 }
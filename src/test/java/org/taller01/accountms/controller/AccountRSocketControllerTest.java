@@ -0,0 +1,187 @@
+package org.taller01.accountms.controller;
+
+import io.rsocket.core.RSocketServer;
+import io.rsocket.exceptions.ApplicationErrorException;
+import io.rsocket.transport.netty.server.CloseableChannel;
+import io.rsocket.transport.netty.server.TcpServerTransport;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.json.Jackson2JsonDecoder;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+import org.springframework.messaging.rsocket.RSocketRequester;
+import org.springframework.messaging.rsocket.RSocketStrategies;
+import org.springframework.messaging.rsocket.annotation.support.RSocketMessageHandler;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.util.pattern.PathPatternRouteMatcher;
+import org.taller01.accountms.domain.Account;
+import org.taller01.accountms.domain.AccountType;
+import org.taller01.accountms.domain.MovementType;
+import org.taller01.accountms.dto.request.MovementCommand;
+import org.taller01.accountms.dto.response.AccountResponse;
+import org.taller01.accountms.dto.response.MovementResult;
+import org.taller01.accountms.dto.response.MovementResult.Status;
+import org.taller01.accountms.exception.ResourceNotFoundException;
+import org.taller01.accountms.service.AccountService;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.springframework.http.HttpStatus.BAD_REQUEST;
+import static org.springframework.http.HttpStatus.CONFLICT;
+
+/** Ida y vuelta real por RSocket (TCP en un puerto libre) contra el controlador. */
+class AccountRSocketControllerTest {
+
+    private AccountService service;
+    private CloseableChannel server;
+    private RSocketRequester requester;
+
+    @BeforeEach
+    void setUp() {
+        service = Mockito.mock(AccountService.class);
+        var strategies = RSocketStrategies.builder()
+                .encoder(new Jackson2JsonEncoder())
+                .decoder(new Jackson2JsonDecoder())
+                .routeMatcher(new PathPatternRouteMatcher())
+                .build();
+        var handler = new RSocketMessageHandler();
+        handler.setRSocketStrategies(strategies);
+        handler.setHandlers(List.of(new AccountRSocketController(service, 4)));
+        handler.afterPropertiesSet();
+
+        server = RSocketServer.create(handler.responder())
+                .bind(TcpServerTransport.create("localhost", 0)).block();
+        requester = RSocketRequester.builder()
+                .rsocketStrategies(strategies)
+                .dataMimeType(MediaType.APPLICATION_JSON)
+                .tcp("localhost", server.address().getPort());
+    }
+
+    @AfterEach
+    void tearDown() {
+        requester.dispose();
+        server.dispose();
+    }
+
+    private static Account acc(String id, String balance) {
+        return Account.builder().id(id).clientId("C1").accountNumber("SV-000001")
+                .balance(new BigDecimal(balance)).active(true).type(AccountType.SAVINGS).build();
+    }
+
+    @Test
+    void deposito_requestResponse_returnsAccount() {
+        Mockito.when(service.deposit("A1", new BigDecimal("50.00")))
+                .thenReturn(Mono.just(acc("A1", "150.00")));
+
+        StepVerifier.create(requester.route("cuentas.{id}.deposito", "A1")
+                        .data(new BigDecimal("50.00"))
+                        .retrieveMono(AccountResponse.class))
+                .expectNextMatches(r -> "A1".equals(r.getId())
+                        && r.getBalance().compareTo(new BigDecimal("150.00")) == 0)
+                .verifyComplete();
+    }
+
+    @Test
+    void retiro_insufficientFunds_isAnApplicationError() {
+        Mockito.when(service.withdraw("A1", new BigDecimal("500")))
+                .thenReturn(Mono.error(new ResponseStatusException(CONFLICT, "Saldo insuficiente")));
+
+        StepVerifier.create(requester.route("cuentas.{id}.retiro", "A1")
+                        .data(new BigDecimal("500"))
+                        .retrieveMono(AccountResponse.class))
+                .expectErrorSatisfies(e -> {
+                    assert e instanceof ApplicationErrorException;
+                    assert e.getMessage().contains("Saldo insuficiente");
+                })
+                .verify();
+    }
+
+    @Test
+    void movimientos_channel_oneResultPerCommand_inOrder() {
+        Mockito.when(service.deposit("A1", BigDecimal.TEN)).thenReturn(Mono.just(acc("A1", "110")));
+        Mockito.when(service.withdraw("A2", BigDecimal.TEN)).thenReturn(
+                Mono.error(new ResponseStatusException(CONFLICT, "Saldo insuficiente")));
+        Mockito.when(service.deposit("X", BigDecimal.TEN)).thenReturn(
+                Mono.error(new ResourceNotFoundException("Cuenta no encontrada")));
+
+        var commands = Flux.just(
+                new MovementCommand("A1", MovementType.DEPOSIT, BigDecimal.TEN),
+                new MovementCommand("A2", MovementType.WITHDRAW, BigDecimal.TEN),
+                new MovementCommand("X", MovementType.DEPOSIT, BigDecimal.TEN));
+
+        StepVerifier.create(requester.route("cuentas.movimientos")
+                        .data(commands, MovementCommand.class)
+                        .retrieveFlux(MovementResult.class))
+                .expectNextMatches(r -> r.getIndex() == 0 && r.getStatus() == Status.APPLIED
+                        && r.getBalance().compareTo(new BigDecimal("110")) == 0)
+                .expectNextMatches(r -> r.getIndex() == 1 && r.getStatus() == Status.INSUFFICIENT_FUNDS)
+                .expectNextMatches(r -> r.getIndex() == 2 && r.getStatus() == Status.ACCOUNT_NOT_FOUND)
+                .verifyComplete();
+    }
+
+    @Test
+    void movimientos_invalidCommands_areResults_andTheChannelStaysOpen() {
+        Mockito.when(service.deposit("A1", BigDecimal.ZERO)).thenReturn(
+                Mono.error(new ResponseStatusException(BAD_REQUEST, "El monto debe ser positivo")));
+        Mockito.when(service.deposit("A1", BigDecimal.TEN)).thenReturn(Mono.just(acc("A1", "110")));
+
+        var commands = Flux.just(
+                new MovementCommand("A1", MovementType.DEPOSIT, BigDecimal.ZERO),
+                new MovementCommand(null, MovementType.DEPOSIT, BigDecimal.TEN),
+                new MovementCommand("A1", null, BigDecimal.TEN),
+                new MovementCommand("A1", MovementType.DEPOSIT, BigDecimal.TEN));
+
+        StepVerifier.create(requester.route("cuentas.movimientos")
+                        .data(commands, MovementCommand.class)
+                        .retrieveFlux(MovementResult.class))
+                .expectNextMatches(r -> r.getIndex() == 0 && r.getStatus() == Status.INVALID)
+                .expectNextMatches(r -> r.getIndex() == 1 && r.getStatus() == Status.INVALID)
+                .expectNextMatches(r -> r.getIndex() == 2 && r.getStatus() == Status.INVALID)
+                .expectNextMatches(r -> r.getIndex() == 3 && r.getStatus() == Status.APPLIED)
+                .verifyComplete();
+    }
+
+    @Test
+    void movimientos_sameAccount_appliedOneAtATimeInOrder() {
+        var order = new CopyOnWriteArrayList<String>();
+        var firstDone = new AtomicBoolean();
+        // El primer retiro tarda: sin orden por cuenta el depósito lo adelantaría
+        Mockito.when(service.withdraw("A1", BigDecimal.TEN)).thenReturn(
+                Mono.delay(Duration.ofMillis(200)).then(Mono.fromCallable(() -> {
+                    order.add("retiro");
+                    firstDone.set(true);
+                    return acc("A1", "90");
+                })));
+        Mockito.when(service.deposit("A1", BigDecimal.ONE)).thenReturn(Mono.fromCallable(() -> {
+            order.add(firstDone.get() ? "deposito" : "deposito-adelantado");
+            return acc("A1", "91");
+        }));
+        Mockito.when(service.deposit("B1", BigDecimal.ONE)).thenReturn(Mono.fromCallable(() -> {
+            order.add("otra-cuenta");
+            return acc("B1", "1");
+        }));
+
+        var commands = Flux.just(
+                new MovementCommand("A1", MovementType.WITHDRAW, BigDecimal.TEN),
+                new MovementCommand("A1", MovementType.DEPOSIT, BigDecimal.ONE),
+                new MovementCommand("B1", MovementType.DEPOSIT, BigDecimal.ONE));
+
+        StepVerifier.create(requester.route("cuentas.movimientos")
+                        .data(commands, MovementCommand.class)
+                        .retrieveFlux(MovementResult.class))
+                .expectNextCount(3)
+                .verifyComplete();
+
+        // La otra cuenta no espera al retiro lento; la misma cuenta sí
+        assert order.equals(List.of("otra-cuenta", "retiro", "deposito")) : order;
+    }
+}
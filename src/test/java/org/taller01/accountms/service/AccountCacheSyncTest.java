@@ -0,0 +1,137 @@
+package org.taller01.accountms.service;
+
+import com.mongodb.MongoException;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.BsonDateTime;
+import org.bson.BsonDocument;
+import org.bson.BsonObjectId;
+import org.bson.BsonString;
+import org.bson.BsonTimestamp;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.data.mongodb.core.ChangeStreamEvent;
+import org.springframework.data.mongodb.core.ChangeStreamOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.taller01.accountms.domain.Account;
+import org.taller01.accountms.domain.CacheSyncToken;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.*;
+
+class AccountCacheSyncTest {
+
+    private ReactiveMongoTemplate mongo;
+    private SimpleMeterRegistry registry;
+    private AccountCache cache;
+    private AccountCacheSync sync;
+
+    @BeforeEach
+    void setUp() {
+        mongo = Mockito.mock(ReactiveMongoTemplate.class);
+        registry = new SimpleMeterRegistry();
+        cache = new AccountCache(registry, 100, Duration.ofMinutes(1));
+        sync = new AccountCacheSync(mongo, cache, registry, true, "node-1", Duration.ofSeconds(5));
+        cache.put(Account.builder().id("A1").balance(BigDecimal.TEN).active(true).build());
+        cache.put(Account.builder().id("A2").balance(BigDecimal.ONE).active(true).build());
+    }
+
+    private static ChangeStreamEvent<Document> event(String op, String coll, BsonValue id,
+                                                     String token) {
+        var raw = new ChangeStreamDocument<Document>(op, new BsonDocument("_data", new BsonString(token)),
+                new BsonDocument("db", new BsonString("accountMSdb")).append("coll", new BsonString(coll)),
+                null, null, null, new BsonDocument("_id", id), new BsonTimestamp(), null, null, null,
+                new BsonDateTime(System.currentTimeMillis() - 50), null, null);
+        return new ChangeStreamEvent<>(raw, Document.class, null);
+    }
+
+    @Test
+    void accountUpdate_invalidatesOnlyThatAccount_recordsLag_andSavesTokenOnce() {
+        when(mongo.save(any(CacheSyncToken.class))).thenAnswer(inv -> Mono.just(inv.getArgument(0)));
+
+        sync.apply(event("update", "accounts", new BsonString("A1"), "T1"));
+
+        assertNull(cache.getIfPresent("A1"));
+        assertNotNull(cache.getIfPresent("A2"));
+        var lag = registry.get("accountms.cache.invalidation.lag").timer();
+        assertEquals(1, lag.count());
+        assert lag.totalTime(TimeUnit.MILLISECONDS) >= 50;
+
+        StepVerifier.create(sync.saveToken()).verifyComplete();
+        StepVerifier.create(sync.saveToken()).verifyComplete();
+
+        var saved = ArgumentCaptor.forClass(CacheSyncToken.class);
+        verify(mongo, times(1)).save(saved.capture());
+        assertEquals("node-1", saved.getValue().getNodeId());
+        assertEquals("T1", saved.getValue().getToken());
+    }
+
+    @Test
+    void slotUpdate_invalidatesOwningAccount_andObjectIdKeysAreMapped() {
+        var oid = new ObjectId();
+        cache.put(Account.builder().id(oid.toHexString()).balance(BigDecimal.TEN).build());
+
+        sync.apply(event("update", "balance_slots", new BsonString("A2:3"), "T1"));
+        sync.apply(event("delete", "accounts", new BsonObjectId(oid), "T2"));
+
+        assertNull(cache.getIfPresent("A2"));
+        assertNull(cache.getIfPresent(oid.toHexString()));
+        assertNotNull(cache.getIfPresent("A1"));
+    }
+
+    @Test
+    void slotInsert_invalidatesOwningAccount_andIsInTheFilter() {
+        sync.apply(event("insert", "balance_slots", new BsonString("A1:2"), "T1"));
+
+        assertNull(cache.getIfPresent("A1"));
+        assertNotNull(cache.getIfPresent("A2"));
+        assertEquals(0.0, registry.counter("accountms.cache.sync.resets").count());
+
+        when(mongo.changeStream(isNull(), any(ChangeStreamOptions.class), eq(Document.class)))
+                .thenReturn(Flux.never());
+        sync.listen().subscribe().dispose();
+
+        var options = ArgumentCaptor.forClass(ChangeStreamOptions.class);
+        verify(mongo).changeStream(isNull(), options.capture(), eq(Document.class));
+        String filter = options.getValue().getFilter().map(Object::toString).orElse("");
+        assert filter.contains("ns.coll=balance_slots, operationType=insert") : filter;
+    }
+
+    @Test
+    void storedToken_isResumed_andLostHistory_restartsFromNowWithAnEmptyCache() {
+        when(mongo.findById("node-1", CacheSyncToken.class))
+                .thenReturn(Mono.just(new CacheSyncToken("node-1", "OLD", null)));
+        when(mongo.changeStream(isNull(), any(ChangeStreamOptions.class), eq(Document.class)))
+                .thenReturn(Flux.error(new MongoException(286, "history lost")),
+                        Flux.just(event("update", "accounts", new BsonString("A1"), "T9")));
+
+        sync.loadToken().block();
+        StepVerifier.create(sync.listen()).expectNextCount(1).thenCancel().verify(Duration.ofSeconds(5));
+
+        var options = ArgumentCaptor.forClass(ChangeStreamOptions.class);
+        verify(mongo, times(2)).changeStream(isNull(), options.capture(), eq(Document.class));
+        assertEquals("OLD", options.getAllValues().get(0).getResumeToken()
+                .map(t -> t.asDocument().getString("_data").getValue()).orElse(null));
+        assert options.getAllValues().get(1).getResumeToken().isEmpty();
+        // Sin token se vacía la caché: A2 tampoco sobrevive aunque su evento no llegó
+        assertNull(cache.getIfPresent("A2"));
+        assertEquals(1.0, registry.counter("accountms.cache.sync.resets").count());
+    }
+}
@@ -0,0 +1,147 @@
+package org.taller01.accountms.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.ServerAddress;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.validation.Validation;
+import org.bson.BsonDocument;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.ReactiveBulkOperations;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.web.server.ResponseStatusException;
+import org.taller01.accountms.client.ClientValidationCache;
+import org.taller01.accountms.domain.Account;
+import org.taller01.accountms.domain.AccountType;
+import org.taller01.accountms.dto.response.ImportResult;
+import org.taller01.accountms.dto.response.ImportResult.Status;
+import org.taller01.accountms.service.AccountImportService.Format;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.LongStream;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+import static org.springframework.http.HttpStatus.BAD_REQUEST;
+
+class AccountImportServiceTest {
+
+    private ReactiveMongoTemplate mongo;
+    private ReactiveBulkOperations bulk;
+    private ClientValidationCache clients;
+    private AccountNumberAllocator numbers;
+    private final List<List<Account>> inserted = new ArrayList<>();
+    private final AtomicLong seq = new AtomicLong();
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        mongo = Mockito.mock(ReactiveMongoTemplate.class);
+        bulk = Mockito.mock(ReactiveBulkOperations.class);
+        when(mongo.bulkOps(BulkMode.UNORDERED, Account.class)).thenReturn(bulk);
+        when(bulk.insert(anyList())).thenAnswer(inv -> {
+            inserted.add(List.copyOf((List<Account>) inv.getArgument(0)));
+            return bulk;
+        });
+        when(bulk.execute()).thenReturn(Mono.just(BulkWriteResult.acknowledged(0, 0, 0, 0, List.of(), List.of())));
+
+        clients = Mockito.mock(ClientValidationCache.class);
+        when(clients.validarCliente(any(String.class))).thenReturn(Mono.empty());
+        when(clients.validarCliente("C404"))
+                .thenReturn(Mono.error(new ResponseStatusException(BAD_REQUEST, "El cliente no existe")));
+
+        numbers = Mockito.mock(AccountNumberAllocator.class);
+        when(numbers.nextBatch(any(AccountType.class), anyInt())).thenAnswer(inv -> {
+            int n = inv.getArgument(1);
+            long last = seq.addAndGet(n);
+            return Mono.just(LongStream.rangeClosed(last - n + 1, last)
+                    .mapToObj(i -> AccountNumberAllocator.format("XX", i)).toList());
+        });
+    }
+
+    private AccountImportService service(int chunkSize) {
+        return new AccountImportService(mongo, clients, numbers,
+                Validation.buildDefaultValidatorFactory().getValidator(), new ObjectMapper(),
+                new SimpleMeterRegistry(), chunkSize, 4);
+    }
+
+    @Test
+    void csv_oneResultPerLine_inOrder_withPerRowRejections() {
+        var lines = Flux.just(
+                "clientId,initialBalance,accountType",
+                "C1,100.00,SAVINGS",
+                "C1,abc,SAVINGS",
+                "C404,10,CHECKING",
+                "C1,-5,SAVINGS",
+                "",
+                "C2,0,CHECKING");
+
+        StepVerifier.create(service(500).importLines(lines, Format.CSV).collectList())
+                .assertNext(results -> {
+                    assert results.stream().map(ImportResult::getLine).toList()
+                            .equals(List.of(2L, 3L, 4L, 5L, 7L));
+                    assert results.get(0).getStatus() == Status.CREATED
+                            && results.get(0).getAccountNumber() != null;
+                    assert "Fila con formato incorrecto".equals(results.get(1).getError());
+                    assert "El cliente no existe".equals(results.get(2).getError());
+                    assert results.get(3).getStatus() == Status.REJECTED
+                            && results.get(3).getError().startsWith("initialBalance");
+                    assert results.get(4).getStatus() == Status.CREATED;
+                })
+                .verifyComplete();
+
+        // Un bulkWrite con las 2 filas válidas y un $inc de números por tipo
+        assert inserted.size() == 1 && inserted.get(0).size() == 2;
+        verify(numbers).nextBatch(AccountType.SAVINGS, 1);
+        verify(numbers).nextBatch(AccountType.CHECKING, 1);
+    }
+
+    @Test
+    void ndjson_validatesEachDistinctClientOncePerChunk_andInsertsInChunks() {
+        var lines = Flux.range(0, 5).map(i -> """
+                {"clientId":"C%d","initialBalance":1,"accountType":"SAVINGS"}""".formatted(i % 2));
+
+        StepVerifier.create(service(2).importLines(lines, Format.NDJSON))
+                .expectNextCount(5)
+                .verifyComplete();
+
+        // Bloques de 2: [C0,C1] [C0,C1] [C0] -> 3 bulkWrite de 2, 2 y 1 cuentas
+        assert inserted.stream().map(List::size).toList().equals(List.of(2, 2, 1));
+        verify(clients, times(3)).validarCliente("C0");
+        verify(clients, times(2)).validarCliente("C1");
+    }
+
+    @Test
+    void unorderedInsert_rejectsOnlyTheFailedDocuments() {
+        var duplicate = new BulkWriteError(11000, "E11000 duplicate key", new BsonDocument(), 1);
+        when(bulk.execute()).thenReturn(Mono.error(new MongoBulkWriteException(
+                BulkWriteResult.acknowledged(2, 0, 0, 0, List.of(), List.of()), List.of(duplicate), null,
+                new ServerAddress(), Set.of())));
+        var lines = Flux.just("C1,1,SAVINGS", "C1,2,SAVINGS", "C1,3,SAVINGS");
+
+        StepVerifier.create(service(500).importLines(lines, Format.CSV).collectList())
+                .assertNext(results -> {
+                    // El índice del error apunta a la cuenta enviada en esa posición del bulkWrite
+                    String failedId = inserted.get(0).get(1).getId();
+                    assert results.stream().filter(r -> r.getStatus() == Status.REJECTED).count() == 1;
+                    assert results.stream().filter(r -> r.getStatus() == Status.CREATED)
+                            .noneMatch(r -> failedId.equals(r.getId()));
+                    assert results.stream().anyMatch(r -> "Número de cuenta duplicado".equals(r.getError()));
+                })
+                .verifyComplete();
+    }
+}
@@ -0,0 +1,121 @@
+package org.taller01.accountms.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.UpdateDefinition;
+import org.taller01.accountms.domain.AccountType;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class AccountNumberAllocatorTest {
+
+    private ReactiveMongoTemplate mongo;
+    private final AtomicLong counter = new AtomicLong();
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @BeforeEach
+    void setUp() {
+        mongo = Mockito.mock(ReactiveMongoTemplate.class);
+        // Simula el $inc de bloques de 3 sobre el documento de counters
+        when(mongo.findAndModify(any(Query.class), any(UpdateDefinition.class),
+                any(FindAndModifyOptions.class), eq(Document.class), eq("counters")))
+                .thenAnswer(inv -> Mono.fromSupplier(() -> new Document("seq", counter.addAndGet(3))));
+    }
+
+    @Test
+    void next_handsOutNumbersFromReservedBlocks() {
+        var allocator = new AccountNumberAllocator(mongo, 3, registry);
+
+        StepVerifier.create(Flux.range(0, 7).concatMap(i -> allocator.next(AccountType.SAVINGS)))
+                .expectNext("SV-0000000001", "SV-0000000002", "SV-0000000003",
+                        "SV-0000000004", "SV-0000000005", "SV-0000000006", "SV-0000000007")
+                .verifyComplete();
+
+        // 7 números = 3 bloques de 3 -> 3 round trips, no 7
+        assertEquals(3, registry.timer("accountms.account.number.blocks", "prefix", "SV").count());
+        verify(mongo, times(3)).findAndModify(any(Query.class), any(UpdateDefinition.class),
+                any(FindAndModifyOptions.class), eq(Document.class), eq("counters"));
+    }
+
+    @Test
+    void next_concurrentCallers_neverGetDuplicates() {
+        var allocator = new AccountNumberAllocator(mongo, 3, registry);
+
+        var numbers = Flux.range(0, 50).flatMap(i -> allocator.next(AccountType.CHECKING))
+                .collectList().block();
+
+        assertEquals(50, new HashSet<>(numbers).size());
+        assert numbers.stream().allMatch(n -> n.startsWith("CH-") && n.length() == 13);
+    }
+
+    @Test
+    void next_moreWaitersThanTheBlock_refillAgainInsteadOfLooping() {
+        // Reserva asíncrona: los 25 llaman mientras la primera recarga sigue en vuelo
+        when(mongo.findAndModify(any(Query.class), any(UpdateDefinition.class),
+                any(FindAndModifyOptions.class), eq(Document.class), eq("counters")))
+                .thenAnswer(inv -> Mono.delay(Duration.ofMillis(20))
+                        .map(t -> new Document("seq", counter.addAndGet(10))));
+        var allocator = new AccountNumberAllocator(mongo, 10, registry);
+
+        var numbers = Flux.range(0, 25).flatMap(i -> allocator.next(AccountType.SAVINGS))
+                .collectList().block(Duration.ofSeconds(5));
+
+        assertEquals(25, new HashSet<>(numbers).size());
+        assertEquals(3, registry.timer("accountms.account.number.blocks", "prefix", "SV").count());
+    }
+
+    @Test
+    void next_reservationFailure_isPropagated_andRetriedOnNextCall() {
+        when(mongo.findAndModify(any(Query.class), any(UpdateDefinition.class),
+                any(FindAndModifyOptions.class), eq(Document.class), eq("counters")))
+                .thenReturn(Mono.error(new IllegalStateException("down")))
+                .thenReturn(Mono.just(new Document("seq", 3L)));
+        var allocator = new AccountNumberAllocator(mongo, 3, registry);
+
+        StepVerifier.create(allocator.next(AccountType.SAVINGS))
+                .expectError(IllegalStateException.class)
+                .verify();
+        StepVerifier.create(allocator.next(AccountType.SAVINGS))
+                .expectNext("SV-0000000001")
+                .verifyComplete();
+    }
+
+    @Test
+    void nextBatch_reservesWholeRangeInOneIncrement_withoutTouchingTheBlock() {
+        when(mongo.findAndModify(any(Query.class), any(UpdateDefinition.class),
+                any(FindAndModifyOptions.class), eq(Document.class), eq("counters")))
+                .thenAnswer(inv -> {
+                    var inc = (Document) ((UpdateDefinition) inv.getArgument(1)).getUpdateObject().get("$inc");
+                    long delta = ((Number) inc.get("seq")).longValue();
+                    return Mono.fromSupplier(() -> new Document("seq", counter.addAndGet(delta)));
+                });
+        var allocator = new AccountNumberAllocator(mongo, 3, registry);
+
+        StepVerifier.create(allocator.nextBatch(AccountType.SAVINGS, 5))
+                .expectNext(List.of("SV-0000000001", "SV-0000000002", "SV-0000000003",
+                        "SV-0000000004", "SV-0000000005"))
+                .verifyComplete();
+        // Las altas individuales siguen con su propio bloque, después del rango importado
+        StepVerifier.create(allocator.next(AccountType.SAVINGS))
+                .expectNext("SV-0000000006")
+                .verifyComplete();
+        assertEquals(2, registry.timer("accountms.account.number.blocks", "prefix", "SV").count());
+    }
+}
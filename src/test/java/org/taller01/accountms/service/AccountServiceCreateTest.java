@@ -2,10 +2,19 @@ package org.taller01.accountms.service;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.mockito.Mockito;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.http.HttpStatus;
 import org.springframework.web.reactive.function.client.*;
 import org.springframework.web.server.ResponseStatusException;
+import org.taller01.accountms.client.ClientLookupBatcher;
+import org.taller01.accountms.client.ClientMsClient;
+import org.taller01.accountms.client.ClientValidationCache;
 import org.taller01.accountms.domain.Account;
 import org.taller01.accountms.domain.AccountType;
 import org.taller01.accountms.dto.request.CreateAccountRequest;
@@ -15,13 +24,17 @@ import reactor.core.publisher.Mono;
 import reactor.test.StepVerifier;
 
 import java.math.BigDecimal;
+import java.time.Duration;
 
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 class AccountServiceCreateTest {
 
     private AccountRepository repo;
+    private ReactiveMongoTemplate mongo;
+    private AccountNumberAllocator numbers;
 
     private WebClient.Builder builderOk() {
         // Simula ClientMS OK (200)
@@ -39,17 +52,36 @@ class AccountServiceCreateTest {
         return WebClient.builder().exchangeFunction(err);
     }
 
+    private ClientValidationCache clients(WebClient.Builder builder) {
+        var registry = new SimpleMeterRegistry();
+        var client = new ClientMsClient(builder, "http://fake-clientms", Duration.ofSeconds(1),
+                Duration.ofSeconds(2), CircuitBreakerRegistry.ofDefaults(),
+                BulkheadRegistry.ofDefaults(), registry);
+        var batcher = new ClientLookupBatcher(client, registry, false, Duration.ZERO, 1,
+                Duration.ZERO);
+        return new ClientValidationCache(batcher, registry, 100, Duration.ofMinutes(5),
+                Duration.ofSeconds(10));
+    }
+
     @BeforeEach
     void setUp() {
         repo = Mockito.mock(AccountRepository.class);
+        mongo = Mockito.mock(ReactiveMongoTemplate.class);
+        numbers = Mockito.mock(AccountNumberAllocator.class);
+        when(numbers.next(any())).thenReturn(Mono.just("SV-0000000001"));
     }
 
     @Test
     void create_ok_validatesClient_andSaves() {
-        var service = new AccountService(repo, builderOk(), "http://fake-clientms");
+        var service = new AccountService(repo, mongo, clients(builderOk()), numbers,
+                new AccountCache(new SimpleMeterRegistry(), 100, Duration.ofMinutes(1)),
+                new MovementCoalescer(mongo, new SimpleMeterRegistry(), false, Duration.ZERO, 1),
+                Mockito.mock(LedgerService.class),
+                Mockito.mock(BalanceSlotService.class),
+                Mockito.mock(TransactionalOperator.class),
+                Mockito.mock(BalanceMigration.class), new SimpleMeterRegistry(), 500);
         var req = new CreateAccountRequest("C1", new BigDecimal("100.00"), AccountType.SAVINGS);
 
-        when(repo.existsByAccountNumber(any())).thenReturn(Mono.just(false));
         when(repo.save(any(Account.class))).thenAnswer(inv -> Mono.just(inv.getArgument(0)));
 
         StepVerifier.create(service.create(req))
@@ -57,15 +89,23 @@ class AccountServiceCreateTest {
                         acc.getClientId().equals("C1")
                                 && acc.getType() == AccountType.SAVINGS
                                 && acc.getBalance().compareTo(new BigDecimal("100.00")) == 0
-                                && acc.getAccountNumber() != null)
+                                && acc.getAccountNumber().equals("SV-0000000001"))
                 .verifyComplete();
 
         verify(repo).save(any(Account.class));
+        // El número sale del allocator: sin consultas de existencia
+        verify(repo, never()).existsByAccountNumber(any());
     }
 
     @Test
     void create_clientNotFound_mapsTo400() {
-        var service = new AccountService(repo, builder404(), "http://fake-clientms");
+        var service = new AccountService(repo, mongo, clients(builder404()), numbers,
+                new AccountCache(new SimpleMeterRegistry(), 100, Duration.ofMinutes(1)),
+                new MovementCoalescer(mongo, new SimpleMeterRegistry(), false, Duration.ZERO, 1),
+                Mockito.mock(LedgerService.class),
+                Mockito.mock(BalanceSlotService.class),
+                Mockito.mock(TransactionalOperator.class),
+                Mockito.mock(BalanceMigration.class), new SimpleMeterRegistry(), 500);
         var req = new CreateAccountRequest("X", BigDecimal.ZERO, AccountType.CHECKING);
 
         StepVerifier.create(service.create(req))
@@ -78,40 +118,58 @@ class AccountServiceCreateTest {
     }
 
     @Test
-    void create_uniqueNumber_retry_and_fail_afterAttempts_mapsTo409() {
-        var service = new AccountService(repo, builderOk(), "http://fake-clientms");
+    void create_allocatorFailure_propagates_withoutSaving() {
+        var service = new AccountService(repo, mongo, clients(builderOk()), numbers,
+                new AccountCache(new SimpleMeterRegistry(), 100, Duration.ofMinutes(1)),
+                new MovementCoalescer(mongo, new SimpleMeterRegistry(), false, Duration.ZERO, 1),
+                Mockito.mock(LedgerService.class),
+                Mockito.mock(BalanceSlotService.class),
+                Mockito.mock(TransactionalOperator.class),
+                Mockito.mock(BalanceMigration.class), new SimpleMeterRegistry(), 500);
         var req = new CreateAccountRequest("C1", BigDecimal.TEN, AccountType.SAVINGS);
-
-        // siempre existe -> fuerza los 10 reintentos y termina en CONFLICT
-        when(repo.existsByAccountNumber(any())).thenReturn(Mono.just(true));
+        when(numbers.next(AccountType.SAVINGS))
+                .thenReturn(Mono.error(new IllegalStateException("counters no disponible")));
 
         StepVerifier.create(service.create(req))
-                .expectErrorSatisfies(err -> {
-                    var ex = (ResponseStatusException) err;
-                    assert ex.getStatusCode().value() == 409;
-                })
+                .expectError(IllegalStateException.class)
                 .verify();
+
+        verify(repo, never()).save(any(Account.class));
     }
 
     @Test
     void listByClientId_callsValidation_andReturnsFlux() {
-        var service = new AccountService(repo, builderOk(), "http://fake-clientms");
+        var service = new AccountService(repo, mongo, clients(builderOk()), numbers,
+                new AccountCache(new SimpleMeterRegistry(), 100, Duration.ofMinutes(1)),
+                new MovementCoalescer(mongo, new SimpleMeterRegistry(), false, Duration.ZERO, 1),
+                Mockito.mock(LedgerService.class),
+                Mockito.mock(BalanceSlotService.class),
+                Mockito.mock(TransactionalOperator.class),
+                Mockito.mock(BalanceMigration.class), new SimpleMeterRegistry(), 500);
 
         var a1 = Account.builder().id("A1").clientId("C1").accountNumber("SV-000001")
                 .balance(BigDecimal.ZERO).active(true).type(AccountType.SAVINGS).build();
 
-        when(repo.findByClientId("C1")).thenReturn(Flux.just(a1));
+        when(mongo.find(any(Query.class), eq(Account.class))).thenReturn(Flux.just(a1));
 
-        StepVerifier.create(service.listByClientId("C1"))
-                .expectNext(a1)
+        StepVerifier.create(service.listByClientId("C1", null, null, null))
+                .expectNextMatches(page -> page.getItems().size() == 1
+                        && page.getItems().get(0).getId().equals("A1")
+                        && page.getNextCursor() == null)
                 .verifyComplete();
     }
 
     @Test
     void listByClientId_clientMsDown_mapsTo503() {
-        var service = new AccountService(repo, builder500(), "http://fake-clientms");
-
-        StepVerifier.create(service.listByClientId("C1"))
+        var service = new AccountService(repo, mongo, clients(builder500()), numbers,
+                new AccountCache(new SimpleMeterRegistry(), 100, Duration.ofMinutes(1)),
+                new MovementCoalescer(mongo, new SimpleMeterRegistry(), false, Duration.ZERO, 1),
+                Mockito.mock(LedgerService.class),
+                Mockito.mock(BalanceSlotService.class),
+                Mockito.mock(TransactionalOperator.class),
+                Mockito.mock(BalanceMigration.class), new SimpleMeterRegistry(), 500);
+
+        StepVerifier.create(service.listByClientId("C1", null, null, null))
                 .expectErrorSatisfies(err -> {
                     var ex = (ResponseStatusException) err;
                     assert ex.getStatusCode().value() == 503; // SERVICE_UNAVAILABLE
@@ -1,32 +1,72 @@
 package org.taller01.accountms.service;
 
+import com.mongodb.MongoWriteException;
+import com.mongodb.ServerAddress;
+import com.mongodb.WriteError;
+import com.mongodb.client.result.UpdateResult;
+import org.bson.BsonDocument;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
-import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.UpdateDefinition;
+import org.springframework.transaction.reactive.TransactionalOperator;
 import org.springframework.web.server.ResponseStatusException;
+import org.taller01.accountms.client.ClientValidationCache;
 import org.taller01.accountms.domain.Account;
 import org.taller01.accountms.domain.AccountType;
 import org.taller01.accountms.dto.request.UpdateAccountRequest;
+import org.taller01.accountms.exception.ResourceNotFoundException;
 import org.taller01.accountms.repository.AccountRepository;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.test.StepVerifier;
 
 import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 class AccountServiceTest {
 
     private AccountRepository repo;
+    private ReactiveMongoTemplate mongo;
+    private SimpleMeterRegistry registry;
+    private TransactionalOperator tx;
+    private BalanceMigration migration;
+    private LedgerService ledger;
+    private BalanceSlotService slots;
     private AccountService service;
 
     @BeforeEach
+    @SuppressWarnings("unchecked")
     void setUp() {
         repo = Mockito.mock(AccountRepository.class);
-        // El baseUrl se usa en validarCliente(), pero en estos tests no lo invocamos.
-        service = new AccountService(repo, WebClient.builder(), "http://localhost:8080");
+        mongo = Mockito.mock(ReactiveMongoTemplate.class);
+        registry = new SimpleMeterRegistry();
+        tx = Mockito.mock(TransactionalOperator.class);
+        // La transacción se simula como transparente
+        when(tx.transactional(any(Mono.class))).thenAnswer(inv -> inv.getArgument(0));
+        // Todos los saldos ya son Decimal128
+        migration = Mockito.mock(BalanceMigration.class);
+        when(migration.migrate(any(String.class))).thenReturn(Mono.just(false));
+        ledger = Mockito.mock(LedgerService.class);
+        slots = Mockito.mock(BalanceSlotService.class);
+        // La validación de cliente no se usa en estos tests
+        service = new AccountService(repo, mongo, Mockito.mock(ClientValidationCache.class),
+                Mockito.mock(AccountNumberAllocator.class),
+                new AccountCache(registry, 100, Duration.ofMinutes(1)),
+                new MovementCoalescer(mongo, registry, false, Duration.ZERO, 1),
+                ledger, slots, tx, migration, registry, 500);
     }
 
     private Account base() {
@@ -40,24 +80,40 @@ class AccountServiceTest {
                 .build();
     }
 
+    private void findAndModifyReturns(Mono<Account> result) {
+        when(mongo.findAndModify(any(Query.class), any(UpdateDefinition.class),
+                any(FindAndModifyOptions.class), eq(Account.class))).thenReturn(result);
+    }
+
     @Test
-    void deposit_increasesBalance() {
-        var acc = base();
-        when(repo.findById("A")).thenReturn(Mono.just(acc));
-        when(repo.save(any(Account.class))).thenAnswer(inv -> Mono.just(inv.getArgument(0)));
+    void deposit_increasesBalance_inSingleAtomicUpdate() {
+        var updated = base();
+        updated.setBalance(new BigDecimal("150.00"));
+        findAndModifyReturns(Mono.just(updated));
 
         StepVerifier.create(service.deposit("A", new BigDecimal("50.00")))
                 .expectNextMatches(saved -> saved.getBalance().compareTo(new BigDecimal("150.00")) == 0)
                 .verifyComplete();
 
-        verify(repo).save(any(Account.class));
+        // Sin lectura previa ni save: un solo round trip
+        verify(repo, never()).findById(any(String.class));
+        verify(repo, never()).save(any(Account.class));
+    }
+
+    @Test
+    void deposit_unknownAccount_notFound() {
+        findAndModifyReturns(Mono.empty());
+
+        StepVerifier.create(service.deposit("X", new BigDecimal("50.00")))
+                .expectError(ResourceNotFoundException.class)
+                .verify();
     }
 
     @Test
     void withdraw_decreasesBalance() {
-        var acc = base();
-        when(repo.findById("A")).thenReturn(Mono.just(acc));
-        when(repo.save(any(Account.class))).thenAnswer(inv -> Mono.just(inv.getArgument(0)));
+        var updated = base();
+        updated.setBalance(new BigDecimal("70.00"));
+        findAndModifyReturns(Mono.just(updated));
 
         StepVerifier.create(service.withdraw("A", new BigDecimal("30.00")))
                 .expectNextMatches(saved -> saved.getBalance().compareTo(new BigDecimal("70.00")) == 0)
@@ -66,27 +122,46 @@ class AccountServiceTest {
 
     @Test
     void withdraw_insufficientBalance_conflict409() {
-        var acc = base();
-        acc.setBalance(new BigDecimal("20.00"));
-        when(repo.findById("A")).thenReturn(Mono.just(acc));
+        // El filtro balance >= amount no hace match, pero la cuenta existe
+        findAndModifyReturns(Mono.empty());
+        when(repo.existsById("A")).thenReturn(Mono.just(true));
 
         StepVerifier.create(service.withdraw("A", new BigDecimal("30.00")))
                 .expectErrorSatisfies(err -> {
                     var ex = (ResponseStatusException) err;
                     assert ex.getStatusCode().value() == 409;
+                    assert "Saldo insuficiente".equals(ex.getReason());
                 })
                 .verify();
+        assert registry.counter("accountms.withdrawals.rejected", "reason", "insufficient_funds")
+                .count() == 1.0;
+    }
+
+    @Test
+    void withdraw_unknownAccount_notFound() {
+        findAndModifyReturns(Mono.empty());
+        when(repo.existsById("X")).thenReturn(Mono.just(false));
+
+        StepVerifier.create(service.withdraw("X", new BigDecimal("30.00")))
+                .expectError(ResourceNotFoundException.class)
+                .verify();
     }
 
     @Test
     void updatePut_toggleActive_ok() {
         var acc = base(); // active = true
         when(repo.findById("A")).thenReturn(Mono.just(acc));
-        when(repo.save(any(Account.class))).thenAnswer(inv -> Mono.just(inv.getArgument(0)));
+        when(mongo.updateFirst(any(Query.class), any(UpdateDefinition.class), eq(Account.class)))
+                .thenReturn(Mono.just(UpdateResult.acknowledged(1, 1L, null)));
 
         StepVerifier.create(service.updatePut("A", new UpdateAccountRequest(false)))
                 .expectNextMatches(saved -> saved.getActive().equals(false))
                 .verifyComplete();
+        // Solo se escribe 'active': el saldo leído no vuelve a la instantánea
+        verify(mongo).updateFirst(any(Query.class),
+                argThat((UpdateDefinition u) -> u.getUpdateObject().toJson().equals("{\"$set\": {\"active\": false}}")),
+                eq(Account.class));
+        verify(repo, never()).save(any(Account.class));
     }
 
     @Test
@@ -133,9 +208,326 @@ class AccountServiceTest {
         var acc = base();
         acc.setBalance(BigDecimal.ZERO);
         when(repo.findById("A")).thenReturn(Mono.just(acc));
-        when(repo.delete(acc)).thenReturn(Mono.empty());
+        when(slots.deleteIfEmpty("A")).thenReturn(Mono.just(true));
 
         StepVerifier.create(service.delete("A")).verifyComplete();
-        verify(repo).delete(acc);
+        // Los slots se borran aunque este nodo no tenga la cuenta como repartida
+        verify(slots).deleteIfEmpty("A");
+    }
+
+    @Test
+    void delete_slotDepositRacingTheCheck_conflict409() {
+        var acc = base();
+        acc.setBalance(BigDecimal.ZERO);
+        when(repo.findById("A")).thenReturn(Mono.just(acc));
+        when(slots.deleteIfEmpty("A")).thenReturn(Mono.just(false));
+
+        StepVerifier.create(service.delete("A"))
+                .expectErrorSatisfies(err -> {
+                    var ex = (ResponseStatusException) err;
+                    assert ex.getStatusCode().value() == 409;
+                })
+                .verify();
+    }
+
+    @Test
+    void getById_shardedAccountUnknownToThisNode_sumsSlots() {
+        var acc = base();
+        acc.setBalanceSlots(4);
+        when(repo.findById("A")).thenReturn(Mono.just(acc));
+        when(slots.isSharded("A")).thenReturn(false);
+        when(slots.withTotal(any(Account.class))).thenAnswer(inv -> {
+            Account a = inv.getArgument(0);
+            return Mono.just(a.toBuilder().balance(a.getBalance().add(new BigDecimal("40.00"))).build());
+        });
+
+        StepVerifier.create(service.getById("A"))
+                .expectNextMatches(a -> a.getBalance().compareTo(new BigDecimal("140.00")) == 0)
+                .verifyComplete();
+    }
+
+    @Test
+    void getById_ledgerMode_includesPendingDeposits() {
+        when(ledger.enabled()).thenReturn(true);
+        var acc = base();
+        when(repo.findById("A")).thenReturn(Mono.just(acc));
+        // Instantánea 100 + depósitos pendientes de 30
+        when(ledger.withPending(acc))
+                .thenReturn(Mono.just(acc.toBuilder().balance(new BigDecimal("130.00")).build()));
+
+        StepVerifier.create(service.getById("A"))
+                .expectNextMatches(a -> a.getBalance().compareTo(new BigDecimal("130.00")) == 0)
+                .verifyComplete();
+    }
+
+    @Test
+    void delete_ledgerMode_pendingDepositsOnZeroSnapshot_conflict409() {
+        when(ledger.enabled()).thenReturn(true);
+        var acc = base();
+        acc.setBalance(BigDecimal.ZERO);
+        when(repo.findById("A")).thenReturn(Mono.just(acc));
+        when(ledger.withPending(acc))
+                .thenReturn(Mono.just(acc.toBuilder().balance(new BigDecimal("30.00")).build()));
+
+        StepVerifier.create(service.delete("A"))
+                .expectErrorSatisfies(err -> {
+                    var ex = (ResponseStatusException) err;
+                    assert ex.getStatusCode().value() == 409;
+                })
+                .verify();
+        verify(ledger, never()).deleteIfEmpty(any(String.class));
+        verify(repo, never()).delete(any(Account.class));
+    }
+
+    @Test
+    void delete_ledgerMode_depositRacingTheCheck_conflict409() {
+        when(ledger.enabled()).thenReturn(true);
+        var acc = base();
+        acc.setBalance(BigDecimal.ZERO);
+        when(repo.findById("A")).thenReturn(Mono.just(acc));
+        when(ledger.withPending(acc)).thenReturn(Mono.just(acc));
+        // El borrado condicional ya no hace match
+        when(ledger.deleteIfEmpty("A")).thenReturn(Mono.just(false));
+
+        StepVerifier.create(service.delete("A"))
+                .expectError(ResponseStatusException.class)
+                .verify();
+        verify(repo, never()).delete(any(Account.class));
+    }
+
+    @Test
+    void listAll_fetchesOneExtraRow_toBuildNextCursor() {
+        var a1 = base();
+        var a2 = base();
+        a2.setId("B");
+        var a3 = base();
+        a3.setId("C");
+        when(mongo.find(any(Query.class), eq(Account.class))).thenReturn(Flux.just(a1, a2, a3));
+
+        StepVerifier.create(service.listAll(null, 2, null))
+                .expectNextMatches(page -> page.getItems().size() == 2
+                        && "B".equals(page.getNextCursor()))
+                .verifyComplete();
+
+        var query = ArgumentCaptor.forClass(Query.class);
+        verify(mongo).find(query.capture(), eq(Account.class));
+        assert query.getValue().getLimit() == 3;
+        assert query.getValue().getSortObject().containsKey("_id");
+    }
+
+    @Test
+    void listAll_invalidCursor_badRequest400() {
+        StepVerifier.create(service.listAll("no-es-un-objectid", 10, null))
+                .expectErrorSatisfies(err -> {
+                    var ex = (ResponseStatusException) err;
+                    assert ex.getStatusCode().value() == 400;
+                })
+                .verify();
+    }
+
+    @Test
+    void listAll_limitOutOfRange_badRequest400() {
+        StepVerifier.create(service.listAll(null, 0, null))
+                .expectError(ResponseStatusException.class)
+                .verify();
+        verifyNoInteractions(mongo);
+    }
+
+    @Test
+    void getById_withFields_pushesProjectionToMongo() {
+        var partial = Account.builder().id("A").balance(new BigDecimal("100.00")).build();
+        when(mongo.findOne(any(Query.class), eq(Account.class))).thenReturn(Mono.just(partial));
+
+        StepVerifier.create(service.getById("A", "balance"))
+                .expectNext(partial)
+                .verifyComplete();
+
+        var query = ArgumentCaptor.forClass(Query.class);
+        verify(mongo).findOne(query.capture(), eq(Account.class));
+        assert query.getValue().getFieldsObject().containsKey("balance");
+        assert !query.getValue().getFieldsObject().containsKey("clientId");
+        verify(repo, never()).findById(any(String.class));
+    }
+
+    @Test
+    void getById_unknownField_badRequest400() {
+        StepVerifier.create(service.getById("A", "balance,password"))
+                .expectErrorSatisfies(err -> {
+                    var ex = (ResponseStatusException) err;
+                    assert ex.getStatusCode().value() == 400;
+                })
+                .verify();
+        verifyNoInteractions(mongo);
+    }
+
+    @Test
+    void getBalance_readsOnlyBalanceFields() {
+        when(mongo.findOne(any(Query.class), eq(Account.class)))
+                .thenReturn(Mono.just(Account.builder().id("A").balance(new BigDecimal("100.00"))
+                        .active(true).build()));
+
+        StepVerifier.create(service.getBalance("A"))
+                .expectNextMatches(b -> b.getBalance().compareTo(new BigDecimal("100.00")) == 0)
+                .verifyComplete();
+
+        var query = ArgumentCaptor.forClass(Query.class);
+        verify(mongo).findOne(query.capture(), eq(Account.class));
+        assert query.getValue().getFieldsObject().keySet()
+                .equals(Set.of("balance", "active", "balanceSlots"));
+    }
+
+    @Test
+    void getBalance_unknownAccount_notFound() {
+        when(mongo.findOne(any(Query.class), eq(Account.class))).thenReturn(Mono.empty());
+
+        StepVerifier.create(service.getBalance("X"))
+                .expectError(ResourceNotFoundException.class)
+                .verify();
+    }
+
+    @Test
+    void getBalances_emptyIds_badRequest400() {
+        StepVerifier.create(service.getBalances(List.of()))
+                .expectError(ResponseStatusException.class)
+                .verify();
+    }
+
+    @Test
+    void getById_readThrough_secondReadIsServedFromCache() {
+        when(repo.findById("A")).thenReturn(Mono.just(base()));
+
+        StepVerifier.create(service.getById("A")).expectNextCount(1).verifyComplete();
+        StepVerifier.create(service.getById("A")).expectNextCount(1).verifyComplete();
+
+        verify(repo, times(1)).findById("A");
+        assert registry.get("cache.hit.ratio").tag("cache", "accounts").gauge().value() == 0.5;
+    }
+
+    @Test
+    void deposit_invalidatesCachedAccount() {
+        var updated = base();
+        updated.setBalance(new BigDecimal("150.00"));
+        when(repo.findById("A")).thenReturn(Mono.just(base()), Mono.just(updated));
+        findAndModifyReturns(Mono.just(updated));
+
+        StepVerifier.create(service.getById("A")).expectNextCount(1).verifyComplete();
+        StepVerifier.create(service.deposit("A", new BigDecimal("50.00"))).expectNextCount(1).verifyComplete();
+
+        // El resultado del depósito no se cachea: la siguiente lectura recarga desde Mongo
+        StepVerifier.create(service.getById("A"))
+                .expectNextMatches(a -> a.getBalance().compareTo(new BigDecimal("150.00")) == 0)
+                .verifyComplete();
+        verify(repo, times(2)).findById("A");
+    }
+
+    @Test
+    void delete_invalidatesCachedAccount() {
+        var acc = base();
+        acc.setBalance(BigDecimal.ZERO);
+        when(repo.findById("A")).thenReturn(Mono.just(acc), Mono.empty());
+        when(slots.deleteIfEmpty("A")).thenReturn(Mono.just(true));
+
+        StepVerifier.create(service.delete("A")).verifyComplete();
+        StepVerifier.create(service.getById("A"))
+                .expectError(ResourceNotFoundException.class)
+                .verify();
+    }
+
+    @Test
+    void transfer_debitsAndCredits_inOneTransaction() {
+        when(mongo.findAndModify(any(Query.class), any(UpdateDefinition.class),
+                any(FindAndModifyOptions.class), eq(Account.class))).thenAnswer(inv -> {
+                    var acc = base();
+                    String id = (String) ((Query) inv.getArgument(0)).getQueryObject().get("_id");
+                    acc.setId(id);
+                    acc.setBalance(new BigDecimal("A".equals(id) ? "70.00" : "130.00"));
+                    return Mono.just(acc);
+                });
+
+        StepVerifier.create(service.transfer("A", "B", new BigDecimal("30.00")))
+                .expectNextMatches(t -> t.getFrom().getBalance().compareTo(new BigDecimal("70.00")) == 0
+                        && t.getTo().getBalance().compareTo(new BigDecimal("130.00")) == 0)
+                .verifyComplete();
+        verify(tx, times(1)).transactional(any(Mono.class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void transfer_invalidatesBothAccounts_afterCommit() {
+        findAndModifyReturns(Mono.just(base()));
+        when(repo.findById("A")).thenReturn(Mono.just(base()));
+        // Una lectura antes del commit ve (y cachea) el saldo previo
+        when(tx.transactional(any(Mono.class))).thenAnswer(inv -> ((Mono<Object>) inv.getArgument(0))
+                .flatMap(r -> service.getById("A").thenReturn(r)));
+
+        StepVerifier.create(service.transfer("A", "B", new BigDecimal("30.00")))
+                .expectNextCount(1)
+                .verifyComplete();
+
+        StepVerifier.create(service.getById("A")).expectNextCount(1).verifyComplete();
+        verify(repo, times(2)).findById("A");
+    }
+
+    @Test
+    void transfer_insufficientBalance_conflict409_withoutCredit() {
+        findAndModifyReturns(Mono.empty());
+        when(repo.existsById("A")).thenReturn(Mono.just(true));
+
+        StepVerifier.create(service.transfer("A", "B", new BigDecimal("500.00")))
+                .expectErrorSatisfies(err -> {
+                    assert ((ResponseStatusException) err).getStatusCode().value() == 409;
+                })
+                .verify();
+        // Solo el cargo condicionado llegó a Mongo
+        verify(mongo, times(1)).findAndModify(any(Query.class), any(UpdateDefinition.class),
+                any(FindAndModifyOptions.class), eq(Account.class));
+    }
+
+    @Test
+    void transfer_sameAccount_badRequest400() {
+        StepVerifier.create(service.transfer("A", "A", BigDecimal.TEN))
+                .expectErrorSatisfies(err -> {
+                    assert ((ResponseStatusException) err).getStatusCode().value() == 400;
+                })
+                .verify();
+        verifyNoInteractions(tx);
+    }
+
+    @Test
+    void withdraw_legacyStringBalance_isMigratedAndRetried() {
+        var updated = base();
+        updated.setBalance(new BigDecimal("70.00"));
+        // El filtro numérico no hace match con el saldo string; tras convertirlo, sí
+        AtomicInteger calls = new AtomicInteger();
+        when(mongo.findAndModify(any(Query.class), any(UpdateDefinition.class),
+                any(FindAndModifyOptions.class), eq(Account.class)))
+                .thenReturn(Mono.defer(() -> calls.getAndIncrement() == 0
+                        ? Mono.empty() : Mono.just(updated)));
+        when(migration.migrate("A")).thenReturn(Mono.just(true));
+
+        StepVerifier.create(service.withdraw("A", new BigDecimal("30.00")))
+                .expectNextMatches(saved -> saved.getBalance().compareTo(new BigDecimal("70.00")) == 0)
+                .verifyComplete();
+        verify(repo, never()).existsById(any(String.class));
+    }
+
+    @Test
+    void deposit_legacyStringBalance_isMigratedAndRetried() {
+        var updated = base();
+        updated.setBalance(new BigDecimal("150.00"));
+        var typeMismatch = new MongoWriteException(
+                new WriteError(14, "Cannot apply $inc to a value of non-numeric type", new BsonDocument()),
+                new ServerAddress(), Set.of());
+        AtomicInteger calls = new AtomicInteger();
+        when(mongo.findAndModify(any(Query.class), any(UpdateDefinition.class),
+                any(FindAndModifyOptions.class), eq(Account.class)))
+                .thenReturn(Mono.defer(() -> calls.getAndIncrement() == 0
+                        ? Mono.error(typeMismatch) : Mono.just(updated)));
+        when(migration.migrate("A")).thenReturn(Mono.just(true));
+
+        StepVerifier.create(service.deposit("A", new BigDecimal("50.00")))
+                .expectNextMatches(saved -> saved.getBalance().compareTo(new BigDecimal("150.00")) == 0)
+                .verifyComplete();
+        verify(migration).migrate("A");
     }
 }
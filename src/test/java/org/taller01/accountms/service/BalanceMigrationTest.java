@@ -0,0 +1,79 @@
+package org.taller01.accountms.service;
+
+import com.mongodb.client.result.UpdateResult;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.UpdateDefinition;
+import org.taller01.accountms.domain.Account;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class BalanceMigrationTest {
+
+    private ReactiveMongoTemplate mongo;
+    private SimpleMeterRegistry registry;
+    private BalanceMigration migration;
+
+    @BeforeEach
+    void setUp() {
+        mongo = Mockito.mock(ReactiveMongoTemplate.class);
+        registry = new SimpleMeterRegistry();
+        migration = new BalanceMigration(mongo, registry, true, 2);
+    }
+
+    private static Flux<Document> ids(String... ids) {
+        return Flux.fromArray(ids).map(id -> new Document("_id", id));
+    }
+
+    @Test
+    void migrateAll_convertsBatchByBatch_untilNoStringBalanceIsLeft() {
+        when(mongo.find(any(Query.class), eq(Document.class), eq("accounts")))
+                .thenReturn(ids("a", "b"), ids("c"), ids());
+        when(mongo.updateMulti(any(Query.class), any(UpdateDefinition.class), eq(Account.class)))
+                .thenReturn(Mono.just(UpdateResult.acknowledged(2, 2L, null)),
+                        Mono.just(UpdateResult.acknowledged(1, 1L, null)));
+
+        StepVerifier.create(migration.migrateAll()).expectNext(3L).verifyComplete();
+
+        var filters = Mockito.mockingDetails(mongo).getInvocations().stream()
+                .filter(i -> i.getMethod().getName().equals("updateMulti"))
+                .map(i -> ((Query) i.getArgument(0)).getQueryObject())
+                .toList();
+        // Cada lote solo toca saldos que siguen siendo string
+        assert filters.size() == 2;
+        assert filters.stream().allMatch(f -> ((Document) f.get("balance")).containsKey("$type"));
+        assert ((Document) filters.get(0).get("_id")).get("$in", List.class).size() == 2;
+        assert registry.counter("accountms.migration.balances").count() == 3.0;
+    }
+
+    @Test
+    void migrateAll_nothingToMigrate_doesNotWrite() {
+        when(mongo.find(any(Query.class), eq(Document.class), eq("accounts"))).thenReturn(ids());
+
+        StepVerifier.create(migration.migrateAll()).expectNext(0L).verifyComplete();
+        verify(mongo, never()).updateMulti(any(Query.class), any(UpdateDefinition.class),
+                eq(Account.class));
+    }
+
+    @Test
+    void migrate_reportsWhetherTheAccountStillHadAStringBalance() {
+        when(mongo.updateFirst(any(Query.class), any(UpdateDefinition.class), eq(Account.class)))
+                .thenReturn(Mono.just(UpdateResult.acknowledged(1, 1L, null)),
+                        Mono.just(UpdateResult.acknowledged(0, 0L, null)));
+
+        StepVerifier.create(migration.migrate("a")).expectNext(true).verifyComplete();
+        StepVerifier.create(migration.migrate("a")).expectNext(false).verifyComplete();
+    }
+}
@@ -0,0 +1,257 @@
+package org.taller01.accountms.service;
+
+import com.mongodb.client.result.DeleteResult;
+import com.mongodb.client.result.UpdateResult;
+import org.bson.Document;
+import org.bson.types.Decimal128;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.UpdateDefinition;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import org.springframework.web.server.ResponseStatusException;
+import org.taller01.accountms.domain.Account;
+import org.taller01.accountms.domain.BalanceSlot;
+import org.taller01.accountms.dto.response.MovementResult.Status;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class BalanceSlotServiceTest {
+
+    private ReactiveMongoTemplate mongo;
+    private TransactionalOperator tx;
+    private BalanceSlotService slots;
+    /** Estado simulado: la cuenta (slot 0, null si se borró) y los sub-saldos por _id. */
+    private Account account;
+    private final Map<String, BigDecimal> stored = new TreeMap<>();
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        mongo = Mockito.mock(ReactiveMongoTemplate.class);
+        tx = Mockito.mock(TransactionalOperator.class);
+        // La transacción se simula como transparente
+        when(tx.transactional(any(Mono.class))).thenAnswer(inv -> inv.getArgument(0));
+        slots = new BalanceSlotService(mongo, tx, Duration.ofSeconds(10));
+        account = Account.builder().id("A").balance(new BigDecimal("10")).active(true).build();
+
+        when(mongo.findById("A", Account.class))
+                .thenAnswer(inv -> Mono.justOrEmpty(account).map(a -> a.toBuilder().build()));
+        when(mongo.findAndModify(any(Query.class), any(UpdateDefinition.class),
+                any(FindAndModifyOptions.class), eq(Account.class))).thenAnswer(inv -> {
+                    Query q = inv.getArgument(0);
+                    UpdateDefinition u = inv.getArgument(1);
+                    if (account == null || !allows(q, account.getBalance()))
+                        return Mono.empty();
+                    account.setBalance(account.getBalance().add(inc(u)));
+                    Document set = (Document) u.getUpdateObject().get("$set");
+                    if (set != null)
+                        account.setBalanceSlots((Integer) set.get("balanceSlots"));
+                    if (u.getUpdateObject().containsKey("$unset"))
+                        account.setBalanceSlots(null);
+                    return Mono.just(account.toBuilder().build());
+                });
+        when(mongo.findAndModify(any(Query.class), any(UpdateDefinition.class),
+                any(FindAndModifyOptions.class), eq(BalanceSlot.class))).thenAnswer(inv -> {
+                    Query q = inv.getArgument(0);
+                    String id = (String) q.getQueryObject().get("_id");
+                    FindAndModifyOptions opts = inv.getArgument(2);
+                    assert !opts.isUpsert();
+                    BigDecimal current = stored.get(id);
+                    if (current == null || !allows(q, current))
+                        return Mono.empty();
+                    stored.put(id, current.add(inc(inv.getArgument(1))));
+                    return Mono.just(slot(id));
+                });
+        when(mongo.updateFirst(any(Query.class), any(UpdateDefinition.class),
+                eq(BalanceSlot.class))).thenAnswer(inv -> {
+                    String id = (String) ((Query) inv.getArgument(0)).getQueryObject().get("_id");
+                    stored.merge(id, inc(inv.getArgument(1)), BigDecimal::add);
+                    return Mono.just(UpdateResult.acknowledged(1, 1L, null));
+                });
+        when(mongo.find(any(Query.class), eq(BalanceSlot.class)))
+                .thenAnswer(inv -> Flux.fromIterable(stored.keySet().stream().map(this::slot).toList()));
+        when(mongo.insertAll(any(Collection.class))).thenAnswer(inv -> {
+            Collection<BalanceSlot> fresh = inv.getArgument(0);
+            fresh.forEach(s -> stored.put(s.getId(), s.getBalance()));
+            return Flux.fromIterable(fresh);
+        });
+        when(mongo.remove(any(Query.class), eq(BalanceSlot.class))).thenAnswer(inv -> {
+            int removed = stored.size();
+            stored.clear();
+            return Mono.just(DeleteResult.acknowledged(removed));
+        });
+        when(mongo.remove(any(Query.class), eq(Account.class))).thenAnswer(inv -> {
+            Query q = inv.getArgument(0);
+            // El borrado sin transacción exige cuenta sin reparto y con saldo cero
+            boolean unshardedOnly = q.getQueryObject().containsKey("balanceSlots");
+            if (account == null || unshardedOnly && (account.getBalanceSlots() != null
+                    || account.getBalance().signum() != 0))
+                return Mono.just(DeleteResult.acknowledged(0));
+            account = null;
+            return Mono.just(DeleteResult.acknowledged(1));
+        });
+    }
+
+    private BalanceSlot slot(String id) {
+        return BalanceSlot.builder().id(id).accountId("A")
+                .slot(Integer.parseInt(id.substring(2))).balance(stored.get(id)).build();
+    }
+
+    private static boolean allows(Query q, BigDecimal balance) {
+        var guard = (Document) q.getQueryObject().get("balance");
+        return guard == null
+                || balance.compareTo(((Decimal128) guard.get("$gte")).bigDecimalValue()) >= 0;
+    }
+
+    private static BigDecimal inc(UpdateDefinition u) {
+        var inc = (Document) u.getUpdateObject().get("$inc");
+        return inc == null ? BigDecimal.ZERO : ((Decimal128) inc.get("balance")).bigDecimalValue();
+    }
+
+    private BigDecimal total() {
+        return stored.values().stream().reduce(account.getBalance(), BigDecimal::add);
+    }
+
+    @Test
+    void configure_marksAccountAsSharded() {
+        StepVerifier.create(slots.configure("A", 4))
+                .expectNextMatches(a -> a.getBalanceSlots() == 4)
+                .verifyComplete();
+        assert slots.isSharded("A");
+        assert stored.keySet().equals(Set.of("A:1", "A:2", "A:3"));
+
+        stored.put("A:2", new BigDecimal("5"));
+        StepVerifier.create(slots.configure("A", 1))
+                .expectNextMatches(a -> a.getBalanceSlots() == null
+                        && a.getBalance().compareTo(new BigDecimal("15")) == 0)
+                .verifyComplete();
+        assert !slots.isSharded("A");
+        assert stored.isEmpty();
+    }
+
+    @Test
+    void configure_unknownAccount_createsNoSlots() {
+        account = null;
+
+        StepVerifier.create(slots.configure("A", 4)).verifyComplete();
+        assert stored.isEmpty();
+        assert !slots.isSharded("A");
+    }
+
+    @Test
+    void configure_outOfRange_isBadRequest() {
+        StepVerifier.create(slots.configure("A", BalanceSlotService.MAX_SLOTS + 1))
+                .expectError(ResponseStatusException.class)
+                .verify();
+    }
+
+    @Test
+    void deposits_spreadAcrossSlots_andReportTotal() {
+        slots.configure("A", 4).block();
+        for (int i = 1; i <= 20; i++) {
+            BigDecimal expected = new BigDecimal("10").add(BigDecimal.valueOf(i));
+            StepVerifier.create(slots.deposit("A", BigDecimal.ONE))
+                    .expectNextMatches(o -> o.status() == Status.APPLIED
+                            && o.account().getBalance().compareTo(expected) == 0)
+                    .verifyComplete();
+        }
+        assert total().compareTo(new BigDecimal("30")) == 0;
+        // Con 20 depósitos al azar sobre 4 slots, alguno cae fuera del documento de la cuenta
+        assert stored.values().stream().anyMatch(b -> b.signum() > 0);
+    }
+
+    @Test
+    void deposit_afterAnotherNodeUnsharded_landsOnTheAccount() {
+        slots.configure("A", 4).block();
+        // Otro nodo vuelve a 1 slot: este sigue creyendo que hay 4
+        stored.clear();
+        account.setBalanceSlots(null);
+
+        for (int i = 1; i <= 20; i++)
+            StepVerifier.create(slots.deposit("A", BigDecimal.ONE))
+                    .expectNextMatches(o -> o.status() == Status.APPLIED)
+                    .verifyComplete();
+        assert account.getBalance().compareTo(new BigDecimal("30")) == 0;
+        assert stored.isEmpty();
+    }
+
+    @Test
+    void deposit_afterAnotherNodeDeleted_isNotFound_andCreatesNoSlot() {
+        slots.configure("A", 4).block();
+        stored.clear();
+        account = null;
+
+        for (int i = 0; i < 20; i++)
+            StepVerifier.create(slots.deposit("A", BigDecimal.ONE))
+                    .expectNextMatches(o -> o.status() == Status.ACCOUNT_NOT_FOUND)
+                    .verifyComplete();
+        assert stored.isEmpty();
+    }
+
+    @Test
+    void deleteIfEmpty_countsSlots_evenWhenThisNodeDoesNotKnowTheyExist() {
+        account.setBalance(BigDecimal.ZERO);
+        account.setBalanceSlots(4);
+        stored.put("A:1", BigDecimal.ZERO);
+        stored.put("A:2", new BigDecimal("5"));
+
+        StepVerifier.create(slots.deleteIfEmpty("A")).expectNext(false).verifyComplete();
+        assert account != null && stored.size() == 2;
+
+        stored.put("A:2", BigDecimal.ZERO);
+        StepVerifier.create(slots.deleteIfEmpty("A")).expectNext(true).verifyComplete();
+        assert account == null && stored.isEmpty();
+    }
+
+    @Test
+    void deleteIfEmpty_unshardedAccount_isOneConditionalRemove() {
+        account.setBalance(BigDecimal.ZERO);
+
+        StepVerifier.create(slots.deleteIfEmpty("A")).expectNext(true).verifyComplete();
+        assert account == null;
+        verify(tx, never()).transactional(any(Mono.class));
+    }
+
+    @Test
+    void withdraw_largerThanAnySlot_consolidates() {
+        slots.configure("A", 4).block();
+        stored.put("A:1", new BigDecimal("10"));
+        stored.put("A:2", new BigDecimal("10"));
+
+        // 25 no cabe en ningún slot (10/10/10) pero sí en el total (30)
+        StepVerifier.create(slots.withdraw("A", new BigDecimal("25")))
+                .expectNextMatches(o -> o.status() == Status.APPLIED
+                        && o.account().getBalance().compareTo(new BigDecimal("5")) == 0)
+                .verifyComplete();
+        assert account.getBalance().compareTo(new BigDecimal("5")) == 0;
+        assert stored.values().stream().allMatch(b -> b.signum() == 0);
+    }
+
+    @Test
+    void withdraw_aboveTotal_isRejected_andKeepsBalance() {
+        slots.configure("A", 4).block();
+        stored.put("A:3", new BigDecimal("5"));
+
+        StepVerifier.create(slots.withdraw("A", new BigDecimal("16")))
+                .expectNextMatches(o -> o.status() == Status.INSUFFICIENT_FUNDS)
+                .verifyComplete();
+        assert total().compareTo(new BigDecimal("15")) == 0;
+        verify(mongo, never()).remove(any(Query.class), eq(Account.class));
+    }
+}
@@ -0,0 +1,120 @@
+package org.taller01.accountms.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import org.springframework.web.server.ResponseStatusException;
+import org.taller01.accountms.domain.Account;
+import org.taller01.accountms.domain.IdempotencyRecord;
+import org.taller01.accountms.domain.MovementType;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class IdempotencyServiceTest {
+
+    private static final BigDecimal TEN = new BigDecimal("10.00");
+
+    private ReactiveMongoTemplate mongo;
+    private SimpleMeterRegistry registry;
+    private IdempotencyService service;
+    private final AtomicInteger executions = new AtomicInteger();
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        mongo = Mockito.mock(ReactiveMongoTemplate.class);
+        var tx = Mockito.mock(TransactionalOperator.class);
+        // La transacción se simula como transparente
+        when(tx.transactional(any(Mono.class))).thenAnswer(inv -> inv.getArgument(0));
+        registry = new SimpleMeterRegistry();
+        service = new IdempotencyService(mongo, tx,
+                new AccountCache(registry, 100, Duration.ofMinutes(1)), registry);
+    }
+
+    private Mono<Account> deposit() {
+        executions.incrementAndGet();
+        return Mono.just(Account.builder().id("A").balance(new BigDecimal("110.00")).build());
+    }
+
+    private IdempotencyRecord stored() {
+        return IdempotencyRecord.builder().key("k1").type(MovementType.DEPOSIT).accountId("A")
+                .amount(TEN).createdAt(Instant.now())
+                .result(Account.builder().id("A").balance(new BigDecimal("110.00")).build())
+                .build();
+    }
+
+    @Test
+    void firstCall_appliesCommand_andRecordsKey() {
+        when(mongo.findById("k1", IdempotencyRecord.class)).thenReturn(Mono.empty());
+        when(mongo.insert(any(IdempotencyRecord.class)))
+                .thenAnswer(inv -> Mono.just(inv.getArgument(0)));
+
+        StepVerifier.create(service.execute("k1", MovementType.DEPOSIT, "A", TEN, this::deposit))
+                .expectNextMatches(acc -> acc.getBalance().compareTo(new BigDecimal("110.00")) == 0)
+                .verifyComplete();
+
+        assertEquals(1, executions.get());
+        verify(mongo).insert(argThat((IdempotencyRecord r) ->
+                r.getKey().equals("k1") && r.getResult().getId().equals("A")));
+    }
+
+    @Test
+    void replay_returnsStoredResponse_withoutApplyingAgain() {
+        when(mongo.findById("k1", IdempotencyRecord.class)).thenReturn(Mono.just(stored()));
+
+        StepVerifier.create(service.execute("k1", MovementType.DEPOSIT, "A", TEN, this::deposit))
+                .expectNextMatches(acc -> acc.getBalance().compareTo(new BigDecimal("110.00")) == 0)
+                .verifyComplete();
+
+        assertEquals(0, executions.get());
+        assertEquals(1.0, registry.counter("accountms.idempotency.replays").count());
+    }
+
+    @Test
+    void concurrentDuplicate_abortsAndReplaysCommittedResponse() {
+        // Primera lectura: aún no existe; tras perder la carrera ya está confirmada
+        when(mongo.findById("k1", IdempotencyRecord.class))
+                .thenReturn(Mono.empty(), Mono.just(stored()));
+        when(mongo.insert(any(IdempotencyRecord.class)))
+                .thenReturn(Mono.error(new DuplicateKeyException("E11000")));
+
+        StepVerifier.create(service.execute("k1", MovementType.DEPOSIT, "A", TEN, this::deposit))
+                .expectNextMatches(acc -> acc.getId().equals("A"))
+                .verifyComplete();
+    }
+
+    @Test
+    void sameKey_withDifferentMovement_isRejected422() {
+        when(mongo.findById("k1", IdempotencyRecord.class)).thenReturn(Mono.just(stored()));
+
+        StepVerifier.create(service.execute("k1", MovementType.WITHDRAW, "A", TEN, this::deposit))
+                .expectErrorSatisfies(err -> {
+                    var ex = (ResponseStatusException) err;
+                    assert ex.getStatusCode().value() == 422;
+                })
+                .verify();
+        assertEquals(0, executions.get());
+    }
+
+    @Test
+    void withoutKey_runsCommandDirectly() {
+        StepVerifier.create(service.execute(null, MovementType.DEPOSIT, "A", TEN, this::deposit))
+                .expectNextCount(1)
+                .verifyComplete();
+
+        verifyNoInteractions(mongo);
+    }
+}
@@ -0,0 +1,252 @@
+package org.taller01.accountms.service;
+
+import com.mongodb.client.result.DeleteResult;
+import com.mongodb.client.result.UpdateResult;
+import org.bson.Document;
+import org.bson.types.Decimal128;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.UpdateDefinition;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import org.taller01.accountms.domain.Account;
+import org.taller01.accountms.domain.Movement;
+import org.taller01.accountms.domain.MovementType;
+import org.taller01.accountms.dto.response.MovementResult.Status;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class LedgerServiceTest {
+
+    private ReactiveMongoTemplate mongo;
+    private TransactionalOperator tx;
+    private LedgerService ledger;
+    /** Estado simulado: la cuenta (null si no existe) y el libro de movimientos. */
+    private Account account;
+    private final List<Movement> movements = new ArrayList<>();
+    /** Se ejecuta justo antes del borrado condicional (simula un depósito que se cuela). */
+    private Runnable beforeRemove = () -> {
+    };
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        mongo = Mockito.mock(ReactiveMongoTemplate.class);
+        tx = Mockito.mock(TransactionalOperator.class);
+        // La transacción se simula como transparente
+        when(tx.transactional(any(Mono.class))).thenAnswer(inv -> inv.getArgument(0));
+        ledger = new LedgerService(mongo, tx, true, 1000);
+        // Instantánea 100 + un depósito pendiente de 25
+        account = Account.builder().id("A").balance(new BigDecimal("100")).build();
+        movements.add(deposit("m0", "25"));
+
+        when(mongo.findById(any(String.class), eq(Account.class))).thenAnswer(inv ->
+                Mono.justOrEmpty(account).filter(a -> a.getId().equals(inv.getArgument(0)))
+                        .map(a -> a.toBuilder().build()));
+        when(mongo.find(any(Query.class), eq(Movement.class)))
+                .thenAnswer(inv -> Flux.fromIterable(List.copyOf(pending(inv.getArgument(0)))));
+        when(mongo.exists(any(Query.class), eq(Movement.class)))
+                .thenAnswer(inv -> Mono.just(!pending(inv.getArgument(0)).isEmpty()));
+        when(mongo.insert(any(Object.class))).thenAnswer(inv -> {
+            Object doc = inv.getArgument(0);
+            if (doc instanceof Movement m) {
+                m.setId("m" + movements.size());
+                movements.add(m);
+            } else {
+                account = (Account) doc;
+            }
+            return Mono.just(doc);
+        });
+        when(mongo.remove(any(Movement.class))).thenAnswer(inv -> {
+            movements.remove((Movement) inv.getArgument(0));
+            return Mono.just(DeleteResult.acknowledged(1));
+        });
+        when(mongo.findAndModify(any(Query.class), any(UpdateDefinition.class),
+                any(FindAndModifyOptions.class), eq(Account.class))).thenAnswer(inv -> {
+                    account.setBalance(account.getBalance().add(inc(inv.getArgument(1))));
+                    return Mono.just(account.toBuilder().build());
+                });
+        when(mongo.updateFirst(any(Query.class), any(UpdateDefinition.class), eq(Account.class)))
+                .thenAnswer(inv -> {
+                    if (account == null)
+                        return Mono.just(UpdateResult.acknowledged(0, 0L, null));
+                    account.setBalance(account.getBalance().add(inc(inv.getArgument(1))));
+                    return Mono.just(UpdateResult.acknowledged(1, 1L, null));
+                });
+        when(mongo.updateMulti(any(Query.class), any(UpdateDefinition.class), eq(Movement.class)))
+                .thenAnswer(inv -> {
+                    var in = (Document) ((Query) inv.getArgument(0)).getQueryObject().get("_id");
+                    var ids = (Collection<String>) in.get("$in");
+                    movements.stream().filter(m -> ids.contains(m.getId()))
+                            .forEach(m -> m.setCompacted(true));
+                    return Mono.just(UpdateResult.acknowledged(ids.size(), (long) ids.size(), null));
+                });
+        when(mongo.findAndRemove(any(Query.class), eq(Account.class))).thenAnswer(inv -> {
+            beforeRemove.run();
+            if (account == null || account.getBalance().signum() != 0)
+                return Mono.empty();
+            Account removed = account;
+            account = null;
+            return Mono.just(removed);
+        });
+    }
+
+    private List<Movement> pending(Query q) {
+        String accountId = (String) q.getQueryObject().get("accountId");
+        return movements.stream().filter(m -> m.getAccountId().equals(accountId) && !m.isCompacted())
+                .toList();
+    }
+
+    private static Movement deposit(String id, String amount) {
+        return Movement.builder().id(id).accountId("A").type(MovementType.DEPOSIT)
+                .amount(new BigDecimal(amount)).build();
+    }
+
+    private static BigDecimal inc(UpdateDefinition u) {
+        var inc = (Document) u.getUpdateObject().get("$inc");
+        return ((Decimal128) inc.get("balance")).bigDecimalValue();
+    }
+
+    @Test
+    void deposit_onlyInsertsItsMovement_andReportsSnapshotPlusPending() {
+        StepVerifier.create(ledger.deposit("A", new BigDecimal("25")))
+                .expectNextMatches(o -> o.status() == Status.APPLIED
+                        && o.account().getBalance().compareTo(new BigDecimal("150")) == 0)
+                .verifyComplete();
+
+        verify(mongo).insert(argThat((Object m) -> m instanceof Movement mv && !mv.isCompacted()
+                && mv.getType() == MovementType.DEPOSIT));
+        // El documento de la cuenta no se escribe
+        verify(mongo, never()).findAndModify(any(Query.class), any(UpdateDefinition.class),
+                any(FindAndModifyOptions.class), eq(Account.class));
+        verify(mongo, never()).updateFirst(any(Query.class), any(UpdateDefinition.class),
+                eq(Account.class));
+        assert account.getBalance().compareTo(new BigDecimal("100")) == 0;
+    }
+
+    @Test
+    void deposit_unknownAccount_removesItsMovement() {
+        account = null;
+
+        StepVerifier.create(ledger.deposit("A", new BigDecimal("25")))
+                .expectNextMatches(o -> o.status() == Status.ACCOUNT_NOT_FOUND)
+                .verifyComplete();
+
+        assert movements.size() == 1;
+    }
+
+    @Test
+    void deposit_pastMaxPending_compactsTheAccount() {
+        ledger = new LedgerService(mongo, tx, true, 1);
+
+        StepVerifier.create(ledger.deposit("A", new BigDecimal("25")))
+                .expectNextMatches(o -> o.account().getBalance().compareTo(new BigDecimal("150")) == 0)
+                .verifyComplete();
+
+        assert account.getBalance().compareTo(new BigDecimal("150")) == 0;
+        assert movements.stream().allMatch(Movement::isCompacted);
+    }
+
+    @Test
+    void withdraw_countsPendingDeposits_andFoldsIntoSnapshot() {
+        // 120 > instantánea (100) pero <= saldo real (125)
+        StepVerifier.create(ledger.withdraw("A", new BigDecimal("120")))
+                .expectNextMatches(o -> o.status() == Status.APPLIED
+                        && o.account().getBalance().compareTo(new BigDecimal("5")) == 0)
+                .verifyComplete();
+
+        verify(mongo).insert(argThat((Object m) -> m instanceof Movement mv && mv.isCompacted()
+                && mv.getType() == MovementType.WITHDRAW));
+        assert account.getBalance().compareTo(new BigDecimal("-20")) == 0;
+    }
+
+    @Test
+    void withdraw_aboveRealBalance_isRejectedWithoutWriting() {
+        StepVerifier.create(ledger.withdraw("A", new BigDecimal("126")))
+                .expectNextMatches(o -> o.status() == Status.INSUFFICIENT_FUNDS)
+                .verifyComplete();
+
+        verify(mongo, never()).insert(any(Object.class));
+    }
+
+    @Test
+    void withdraw_snapshotWithoutBalance_countsOnlyPending() {
+        account.setBalance(null);
+
+        StepVerifier.create(ledger.withdraw("A", new BigDecimal("30")))
+                .expectNextMatches(o -> o.status() == Status.INSUFFICIENT_FUNDS)
+                .verifyComplete();
+    }
+
+    @Test
+    void current_addsUncompactedMovements_toTheSnapshot() {
+        StepVerifier.create(ledger.current("A"))
+                .expectNextMatches(acc -> acc.getBalance().compareTo(new BigDecimal("125")) == 0)
+                .verifyComplete();
+    }
+
+    @Test
+    void compact_foldsPendingSum_andMarksMovements() {
+        StepVerifier.create(ledger.compact("A"))
+                .expectNext(1)
+                .verifyComplete();
+
+        assert account.getBalance().compareTo(new BigDecimal("125")) == 0;
+        assert movements.stream().allMatch(Movement::isCompacted);
+    }
+
+    @Test
+    void compact_deletedAccount_leavesMovementsPending() {
+        account = null;
+
+        StepVerifier.create(ledger.compact("A"))
+                .expectNext(0)
+                .verifyComplete();
+
+        assert movements.stream().noneMatch(Movement::isCompacted);
+    }
+
+    @Test
+    void deleteIfEmpty_pendingDepositsOnZeroSnapshot_keepsAccount() {
+        account.setBalance(BigDecimal.ZERO);
+
+        StepVerifier.create(ledger.deleteIfEmpty("A")).expectNext(false).verifyComplete();
+
+        assert account != null;
+        verify(mongo, never()).findAndRemove(any(Query.class), eq(Account.class));
+    }
+
+    @Test
+    void deleteIfEmpty_emptyAccount_isRemoved() {
+        account.setBalance(BigDecimal.ZERO);
+        movements.clear();
+
+        StepVerifier.create(ledger.deleteIfEmpty("A")).expectNext(true).verifyComplete();
+
+        assert account == null;
+    }
+
+    @Test
+    void deleteIfEmpty_depositRacingTheRemove_restoresAccount() {
+        account.setBalance(BigDecimal.ZERO);
+        movements.clear();
+        beforeRemove = () -> movements.add(deposit("late", "10"));
+
+        StepVerifier.create(ledger.deleteIfEmpty("A")).expectNext(false).verifyComplete();
+
+        assert account != null && account.getBalance().signum() == 0;
+    }
+}
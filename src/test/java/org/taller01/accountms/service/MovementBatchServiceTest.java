@@ -0,0 +1,173 @@
+package org.taller01.accountms.service;
+
+import com.mongodb.bulk.BulkWriteResult;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.ReactiveBulkOperations;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.UpdateDefinition;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import org.springframework.web.server.ResponseStatusException;
+import org.taller01.accountms.domain.Account;
+import org.taller01.accountms.domain.MovementType;
+import org.taller01.accountms.dto.request.MovementCommand;
+import org.taller01.accountms.dto.response.MovementResult.Status;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class MovementBatchServiceTest {
+
+    private ReactiveMongoTemplate mongo;
+    private ReactiveBulkOperations bulk;
+    private LedgerService ledger;
+    private BalanceSlotService slots;
+    private MovementBatchService service;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        mongo = Mockito.mock(ReactiveMongoTemplate.class);
+        bulk = Mockito.mock(ReactiveBulkOperations.class);
+        var tx = Mockito.mock(TransactionalOperator.class);
+        // La transacción se simula como transparente
+        when(tx.transactional(any(Mono.class))).thenAnswer(inv -> inv.getArgument(0));
+        when(mongo.bulkOps(BulkMode.UNORDERED, Account.class)).thenReturn(bulk);
+        when(bulk.updateOne(any(Query.class), any(UpdateDefinition.class))).thenReturn(bulk);
+        ledger = Mockito.mock(LedgerService.class);
+        slots = Mockito.mock(BalanceSlotService.class);
+        service = new MovementBatchService(mongo, tx,
+                new AccountCache(new SimpleMeterRegistry(), 100, Duration.ofMinutes(1)),
+                ledger, slots, 100);
+    }
+
+    private Account acc(String id, String balance) {
+        return Account.builder().id(id).balance(new BigDecimal(balance)).build();
+    }
+
+    private BulkWriteResult matched(int n) {
+        return BulkWriteResult.acknowledged(0, n, 0, n, List.of(), List.of());
+    }
+
+    private MovementCommand cmd(String id, MovementType type, String amount) {
+        return new MovementCommand(id, type, new BigDecimal(amount));
+    }
+
+    @Test
+    void apply_resolvesEachItemInOrder_withOneBulkWrite() {
+        when(mongo.find(any(Query.class), eq(Account.class)))
+                .thenReturn(Flux.just(acc("A", "100.00"), acc("B", "5.00")));
+        when(bulk.execute()).thenReturn(Mono.just(matched(2)));
+
+        var cmds = List.of(
+                cmd("A", MovementType.WITHDRAW, "80"),
+                cmd("A", MovementType.WITHDRAW, "30"),   // 20 < 30 -> rechazado
+                cmd("B", MovementType.DEPOSIT, "10"),
+                cmd("A", MovementType.DEPOSIT, "15"),
+                cmd("X", MovementType.DEPOSIT, "1"));
+
+        StepVerifier.create(service.apply(cmds))
+                .expectNextMatches(r -> r.getStatus() == Status.APPLIED
+                        && r.getBalance().compareTo(new BigDecimal("20")) == 0)
+                .expectNextMatches(r -> r.getStatus() == Status.INSUFFICIENT_FUNDS
+                        && r.getBalance().compareTo(new BigDecimal("20")) == 0)
+                .expectNextMatches(r -> r.getStatus() == Status.APPLIED
+                        && r.getBalance().compareTo(new BigDecimal("15")) == 0)
+                .expectNextMatches(r -> r.getStatus() == Status.APPLIED
+                        && r.getBalance().compareTo(new BigDecimal("35")) == 0)
+                .expectNextMatches(r -> r.getStatus() == Status.ACCOUNT_NOT_FOUND && r.getIndex() == 4)
+                .verifyComplete();
+
+        // Una actualización por cuenta existente, un solo bulkWrite
+        verify(bulk, times(2)).updateOne(any(Query.class), any(UpdateDefinition.class));
+        verify(bulk, times(1)).execute();
+    }
+
+    @Test
+    void apply_staleBalance_retriesWholeBatch() {
+        when(mongo.find(any(Query.class), eq(Account.class)))
+                .thenReturn(Flux.just(acc("A", "100.00")));
+        when(bulk.execute()).thenReturn(Mono.just(matched(0)), Mono.just(matched(1)));
+
+        StepVerifier.create(service.apply(List.of(cmd("A", MovementType.DEPOSIT, "1"))))
+                .expectNextMatches(r -> r.getStatus() == Status.APPLIED)
+                .verifyComplete();
+
+        verify(bulk, times(2)).execute();
+    }
+
+    @Test
+    void apply_shardedAccount_goesThroughSlots_inOrder_andKeepsBatchIndices() {
+        var sharded = acc("S", "0.00");
+        sharded.setBalanceSlots(4);
+        when(mongo.find(any(Query.class), eq(Account.class)))
+                .thenReturn(Flux.just(acc("A", "100.00"), sharded));
+        when(bulk.execute()).thenReturn(Mono.just(matched(1)));
+        when(slots.deposit("S", new BigDecimal("50")))
+                .thenReturn(Mono.just(new MovementOutcome(Status.APPLIED, acc("S", "50"))));
+        when(slots.withdraw("S", new BigDecimal("70")))
+                .thenReturn(Mono.just(new MovementOutcome(Status.INSUFFICIENT_FUNDS, null)));
+
+        var cmds = List.of(
+                cmd("S", MovementType.DEPOSIT, "50"),
+                cmd("A", MovementType.WITHDRAW, "10"),
+                cmd("S", MovementType.WITHDRAW, "70"));
+
+        StepVerifier.create(service.apply(cmds))
+                .expectNextMatches(r -> r.getIndex() == 0 && r.getStatus() == Status.APPLIED
+                        && r.getBalance().compareTo(new BigDecimal("50")) == 0)
+                .expectNextMatches(r -> r.getIndex() == 1 && r.getStatus() == Status.APPLIED
+                        && r.getBalance().compareTo(new BigDecimal("90")) == 0)
+                .expectNextMatches(r -> r.getIndex() == 2
+                        && r.getStatus() == Status.INSUFFICIENT_FUNDS)
+                .verifyComplete();
+
+        var inOrder = inOrder(slots);
+        inOrder.verify(slots).deposit("S", new BigDecimal("50"));
+        inOrder.verify(slots).withdraw("S", new BigDecimal("70"));
+        // Solo la cuenta no repartida va al bulkWrite
+        verify(bulk, times(1)).updateOne(any(Query.class), any(UpdateDefinition.class));
+    }
+
+    @Test
+    void apply_ledgerMode_goesThroughTheLedger_withoutBulkWrite() {
+        when(ledger.enabled()).thenReturn(true);
+        when(ledger.deposit("A", new BigDecimal("5")))
+                .thenReturn(Mono.just(new MovementOutcome(Status.APPLIED, acc("A", "105"))));
+        when(ledger.withdraw("X", new BigDecimal("1")))
+                .thenReturn(Mono.just(new MovementOutcome(Status.ACCOUNT_NOT_FOUND, null)));
+
+        StepVerifier.create(service.apply(List.of(cmd("A", MovementType.DEPOSIT, "5"),
+                        cmd("X", MovementType.WITHDRAW, "1"))))
+                .expectNextMatches(r -> r.getIndex() == 0
+                        && r.getBalance().compareTo(new BigDecimal("105")) == 0)
+                .expectNextMatches(r -> r.getIndex() == 1
+                        && r.getStatus() == Status.ACCOUNT_NOT_FOUND)
+                .verifyComplete();
+
+        verifyNoInteractions(bulk);
+    }
+
+    @Test
+    void apply_nonPositiveAmount_badRequest400() {
+        StepVerifier.create(service.apply(List.of(cmd("A", MovementType.DEPOSIT, "0"))))
+                .expectErrorSatisfies(err -> {
+                    var ex = (ResponseStatusException) err;
+                    assert ex.getStatusCode().value() == 400;
+                })
+                .verify();
+        verifyNoInteractions(bulk);
+    }
+}
@@ -0,0 +1,124 @@
+package org.taller01.accountms.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.Document;
+import org.bson.types.Decimal128;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.UpdateDefinition;
+import org.taller01.accountms.domain.Account;
+import org.taller01.accountms.domain.MovementType;
+import org.taller01.accountms.dto.request.MovementCommand;
+import org.taller01.accountms.dto.response.MovementResult.Status;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class MovementCoalescerTest {
+
+    private ReactiveMongoTemplate mongo;
+    private SimpleMeterRegistry registry;
+    private MovementCoalescer coalescer;
+
+    @BeforeEach
+    void setUp() {
+        mongo = Mockito.mock(ReactiveMongoTemplate.class);
+        registry = new SimpleMeterRegistry();
+        // Ventana amplia: todas las llamadas del test caen en el mismo grupo
+        coalescer = new MovementCoalescer(mongo, registry, true, Duration.ofMillis(100), 256);
+    }
+
+    private MovementCommand cmd(MovementType type, String amount) {
+        return new MovementCommand("A", type, new BigDecimal(amount));
+    }
+
+    /** Envía los comandos a la vez y devuelve los resultados en el orden de envío. */
+    private List<MovementOutcome> submitAll(MovementCommand... commands) {
+        return Flux.fromArray(commands).flatMapSequential(coalescer::submit)
+                .collectList().block(Duration.ofSeconds(5));
+    }
+
+    private static BigDecimal inc(UpdateDefinition u) {
+        var inc = (Document) u.getUpdateObject().get("$inc");
+        return ((Decimal128) inc.get("balance")).bigDecimalValue();
+    }
+
+    @Test
+    void depositsOnly_oneIncForTheGroup_eachCallerSeesItsOwnBalance() {
+        when(mongo.findAndModify(any(Query.class), any(UpdateDefinition.class),
+                any(FindAndModifyOptions.class), eq(Account.class)))
+                .thenAnswer(inv -> Mono.just(Account.builder().id("A")
+                        .balance(new BigDecimal("100.00").add(inc(inv.getArgument(1)))).build()));
+
+        var out = submitAll(cmd(MovementType.DEPOSIT, "10"), cmd(MovementType.DEPOSIT, "20"),
+                cmd(MovementType.DEPOSIT, "30"));
+
+        assertEquals(List.of("110.00", "130.00", "160.00"),
+                out.stream().map(o -> o.account().getBalance().toPlainString()).toList());
+        verify(mongo, times(1)).findAndModify(any(Query.class), any(UpdateDefinition.class),
+                any(FindAndModifyOptions.class), eq(Account.class));
+        assertEquals(3.0, registry.summary("accountms.coalescing.group.size").totalAmount());
+    }
+
+    @Test
+    void withdrawals_keepInsufficientFundsInOrder_andWriteOneNetInc() {
+        when(mongo.findById("A", Account.class)).thenReturn(
+                Mono.just(Account.builder().id("A").balance(new BigDecimal("50")).build()));
+        when(mongo.findAndModify(any(Query.class), any(UpdateDefinition.class),
+                any(FindAndModifyOptions.class), eq(Account.class)))
+                .thenAnswer(inv -> Mono.just(Account.builder().id("A")
+                        .balance(new BigDecimal("50").add(inc(inv.getArgument(1)))).build()));
+
+        // 50 -80 (rechazado) +40 = 90 -80 = 10
+        var out = submitAll(cmd(MovementType.WITHDRAW, "80"), cmd(MovementType.DEPOSIT, "40"),
+                cmd(MovementType.WITHDRAW, "80"));
+
+        assertEquals(Status.INSUFFICIENT_FUNDS, out.get(0).status());
+        assertEquals(new BigDecimal("90"), out.get(1).account().getBalance());
+        assertEquals(new BigDecimal("10"), out.get(2).account().getBalance());
+        verify(mongo, times(1)).findAndModify(
+                argThat((Query q) -> q.getQueryObject().containsKey("balance")),
+                argThat((UpdateDefinition u) -> inc(u).compareTo(new BigDecimal("-40")) == 0),
+                any(FindAndModifyOptions.class), eq(Account.class));
+    }
+
+    @Test
+    void staleBalance_resimulatesTheGroup() {
+        when(mongo.findById("A", Account.class)).thenReturn(
+                Mono.just(Account.builder().id("A").balance(new BigDecimal("100")).build()),
+                Mono.just(Account.builder().id("A").balance(new BigDecimal("70")).build()));
+        // Primer intento: otra escritura cambió el saldo; segundo: aplica
+        when(mongo.findAndModify(any(Query.class), any(UpdateDefinition.class),
+                any(FindAndModifyOptions.class), eq(Account.class)))
+                .thenReturn(Mono.empty(), Mono.just(
+                        Account.builder().id("A").balance(new BigDecimal("10")).build()));
+
+        var out = submitAll(cmd(MovementType.WITHDRAW, "60"));
+
+        assertEquals(Status.APPLIED, out.get(0).status());
+        assertEquals(new BigDecimal("10"), out.get(0).account().getBalance());
+        verify(mongo, times(2)).findById("A", Account.class);
+    }
+
+    @Test
+    void unknownAccount_everyCallerGetsNotFound() {
+        when(mongo.findAndModify(any(Query.class), any(UpdateDefinition.class),
+                any(FindAndModifyOptions.class), eq(Account.class))).thenReturn(Mono.empty());
+
+        var out = submitAll(cmd(MovementType.DEPOSIT, "10"), cmd(MovementType.DEPOSIT, "20"));
+
+        assert out.stream().allMatch(o -> o.status() == Status.ACCOUNT_NOT_FOUND);
+    }
+}